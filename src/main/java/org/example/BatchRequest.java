@@ -0,0 +1,39 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BatchRequest {
+    private String method;
+    private String path;
+
+    public BatchRequest(@JsonProperty("method") String method,
+                        @JsonProperty("path") String path) {
+        this.method = method;
+        this.path = path;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    // The path of the operation as it would be requested on its own, for example "shopping-list/get-enriched/<id>".
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchRequest{" +
+                "method='" + method + '\'' +
+                ", path='" + path + '\'' +
+                '}';
+    }
+}
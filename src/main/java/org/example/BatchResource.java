@@ -0,0 +1,129 @@
+package org.example;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Providers;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Runs several read operations of the other resources in one request. The caller is authenticated once, and the
+// operations run in parallel, because none of them depends on the result of another.
+@Path("batch")
+@Consumes(MediaType.APPLICATION_JSON)
+@Produces(MediaType.APPLICATION_JSON)
+public class BatchResource {
+    static final int MAX_BATCH_REQUESTS = 50;
+    private static final Logger LOGGER = Logger.getLogger(BatchResource.class.getName());
+
+    private final UserDAO userDAO;
+    private final ShoppingListDAO shoppingListDAO;
+    private final Executor executor;
+
+    public BatchResource(UserDAO userDAO, ShoppingListDAO shoppingListDAO, Executor executor) {
+        this.userDAO = userDAO;
+        this.shoppingListDAO = shoppingListDAO;
+        this.executor = executor;
+    }
+
+    @POST
+    public List<BatchResponse> batch(@HeaderParam("Authorization") String auth, @Context Providers providers, List<BatchRequest> requests) {
+        if (requests == null || requests.isEmpty() || requests.size() > MAX_BATCH_REQUESTS) {
+            throw new ApplicationException("Invalid number of requests.");
+        }
+        User authenticatedUser = userDAO.authenticate(auth);
+        List<CompletableFuture<BatchResponse>> responses = new ArrayList<>();
+        for (BatchRequest request : requests) {
+            responses.add(CompletableFuture.supplyAsync(() -> execute(authenticatedUser, request, providers), executor));
+        }
+        List<BatchResponse> result = new ArrayList<>();
+        for (CompletableFuture<BatchResponse> response : responses) {
+            result.add(response.join());
+        }
+        return result;
+    }
+
+    private BatchResponse execute(User authenticatedUser, BatchRequest request, Providers providers) {
+        if (!"GET".equals(request.getMethod())) {
+            return new BatchResponse(Response.Status.METHOD_NOT_ALLOWED.getStatusCode(), "Only GET operations can be batched.");
+        }
+        if (request.getPath() == null) {
+            return new BatchResponse(Response.Status.NOT_FOUND.getStatusCode(), "Unknown operation.");
+        }
+        String[] pathAndQuery = request.getPath().split("\\?", 2);
+        String[] segments = pathAndQuery[0].replaceFirst("^/+", "").split("/");
+        Map<String, String> query = parseQuery(pathAndQuery.length > 1 ? pathAndQuery[1] : "");
+        String operation = segments.length > 1 ? segments[0] + "/" + segments[1] : segments[0];
+        String id = segments.length == 3 ? segments[2] : null;
+        try {
+            Object body;
+            if (segments.length > 3) {
+                body = null;
+            } else if (operation.equals("shopping-list/get")) {
+                body = id == null ? shoppingListDAO.getShoppingLists(authenticatedUser) : shoppingListDAO.getShoppingList(authenticatedUser, id);
+            } else if (operation.equals("shopping-list/get-own") && id == null) {
+                body = shoppingListDAO.getOwnShoppingLists(authenticatedUser);
+            } else if (operation.equals("shopping-list/get-invitations") && id == null) {
+                body = shoppingListDAO.getInvitationsByUser(authenticatedUser);
+            } else if (operation.equals("shopping-list/get-invitations-by-shopping-list") && id != null) {
+                body = shoppingListDAO.getInvitationsByShoppingList(authenticatedUser, id);
+            } else if (operation.equals("shopping-list/get-enriched") && id != null) {
+                body = shoppingListDAO.getEnrichedShoppingList(authenticatedUser, id);
+            } else if (operation.equals("shopping-list/get-changes") && id != null) {
+                body = shoppingListDAO.getShoppingListDelta(authenticatedUser, id, Long.parseLong(query.getOrDefault("since", "-1")));
+            } else if (operation.equals("user/get") && id != null) {
+                body = userDAO.getUser(id);
+            } else {
+                body = null;
+            }
+            if (body == null) {
+                return new BatchResponse(Response.Status.NOT_FOUND.getStatusCode(), "Unknown operation.");
+            }
+            return new BatchResponse(Response.Status.OK.getStatusCode(), body);
+        } catch (NumberFormatException e) {
+            return new BatchResponse(Response.Status.BAD_REQUEST.getStatusCode(), "Invalid query parameter.");
+        } catch (RuntimeException e) {
+            return toBatchResponse(e, providers);
+        }
+    }
+
+    // Maps the exception with the exception mappers of the application, so an operation fails in the batch with the
+    // status and message it would get on its own.
+    @SuppressWarnings("unchecked")
+    private static <E extends RuntimeException> BatchResponse toBatchResponse(E exception, Providers providers) {
+        ExceptionMapper<E> mapper = providers.getExceptionMapper((Class<E>) exception.getClass());
+        if (mapper == null) {
+            LOGGER.log(Level.SEVERE, "A batch operation failed.", exception);
+            return new BatchResponse(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), "Internal server error.");
+        }
+        Response response = mapper.toResponse(exception);
+        return new BatchResponse(response.getStatus(), response.getEntity());
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            if (!parameter.isEmpty()) {
+                String[] nameAndValue = parameter.split("=", 2);
+                parameters.put(URLDecoder.decode(nameAndValue[0], StandardCharsets.UTF_8),
+                        nameAndValue.length > 1 ? URLDecoder.decode(nameAndValue[1], StandardCharsets.UTF_8) : "");
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,39 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BatchResponse {
+    private int status;
+    private Object body;
+
+    public BatchResponse(@JsonProperty("status") int status,
+                         @JsonProperty("body") Object body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    // The entity the operation returns on its own, or the error message if the status is not 200.
+    public Object getBody() {
+        return body;
+    }
+
+    public void setBody(Object body) {
+        this.body = body;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResponse{" +
+                "status=" + status +
+                ", body=" + body +
+                '}';
+    }
+}
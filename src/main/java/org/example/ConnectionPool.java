@@ -0,0 +1,97 @@
+package org.example;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import javax.sql.DataSource;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final long DEFAULT_ACQUIRE_TIMEOUT_MS = 5000;
+    private static final long DEFAULT_MAX_LIFETIME_MS = 1800000;
+
+    private final HikariDataSource dataSource;
+
+    public ConnectionPool(String dbUrl, String username, String password) {
+        this(dbUrl, username, password,
+                getPoolSize(System::getenv),
+                getAcquireTimeoutMs(System::getenv),
+                getMaxLifetimeMs(System::getenv));
+    }
+
+    public ConnectionPool(String dbUrl, String username, String password, int poolSize, long acquireTimeoutMs, long maxLifetimeMs) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("skiouraki");
+        config.setJdbcUrl(dbUrl);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(poolSize);
+        config.setConnectionTimeout(acquireTimeoutMs);
+        config.setMaxLifetime(maxLifetimeMs);
+        config.setRegisterMbeans(true);
+        this.dataSource = new HikariDataSource(config);
+        LOGGER.info("Connection pool started with " + poolSize + " connections.");
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public int getActiveConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getIdleConnections();
+    }
+
+    public int getThreadsAwaitingConnection() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+    }
+
+    public int getMaximumPoolSize() {
+        return dataSource.getMaximumPoolSize();
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    static int getPoolSize(Function<String, String> env) {
+        return (int) getEnv(env, "DB_POOL_SIZE", DEFAULT_POOL_SIZE, Integer.MAX_VALUE);
+    }
+
+    static long getAcquireTimeoutMs(Function<String, String> env) {
+        return getEnv(env, "DB_POOL_ACQUIRE_TIMEOUT_MS", DEFAULT_ACQUIRE_TIMEOUT_MS, Long.MAX_VALUE);
+    }
+
+    static long getMaxLifetimeMs(Function<String, String> env) {
+        return getEnv(env, "DB_POOL_MAX_LIFETIME_MS", DEFAULT_MAX_LIFETIME_MS, Long.MAX_VALUE);
+    }
+
+    // Fails at startup with the name of the variable, instead of with a bare NumberFormatException.
+    private static long getEnv(Function<String, String> env, String name, long defaultValue, long maxValue) {
+        String value = env.apply(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed > 0 && parsed <= maxValue) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException(name + " must be a positive whole number, but is '" + value + "'.");
+    }
+}
@@ -0,0 +1,210 @@
+package org.example;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Executes a request that carries an Idempotency-Key header at most once. The response of the first execution is
+// stored and returned again for retries with the same key, path and credentials. A retry that arrives while the first
+// execution is still running waits for it. Server errors are not stored, so the request can be retried. A digest of
+// the body is kept with the entry, and reusing a key with a different body is rejected with 422.
+@Idempotent
+public class IdempotencyFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    private static final String PENDING_RESPONSE = IdempotencyFilter.class.getName() + ".pendingResponse";
+    private static final Duration DEFAULT_TTL = Duration.ofHours(24);
+    private static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final long WAIT_TIMEOUT_SECONDS = 30;
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int UNPROCESSABLE_ENTITY = 422;
+
+    private final Cache<String, PendingResponse> responses;
+
+    public IdempotencyFilter() {
+        this(DEFAULT_TTL, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public IdempotencyFilter(Duration ttl, long maximumSize) {
+        this.responses = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        String idempotencyKey = requestContext.getHeaderString(IDEMPOTENCY_KEY);
+        if (idempotencyKey == null) {
+            return;
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new ApplicationException("Invalid Idempotency-Key.");
+        }
+        String storeKey = getStoreKey(requestContext, idempotencyKey);
+        String bodyDigest = getBodyDigest(requestContext);
+        while (true) {
+            PendingResponse pendingResponse = new PendingResponse(storeKey, bodyDigest);
+            PendingResponse storedResponse = responses.asMap().putIfAbsent(storeKey, pendingResponse);
+            if (storedResponse == null) {
+                requestContext.setProperty(PENDING_RESPONSE, pendingResponse);
+                return;
+            }
+            if (!storedResponse.bodyDigest.equals(bodyDigest)) {
+                requestContext.abortWith(Response.status(UNPROCESSABLE_ENTITY)
+                        .entity("The Idempotency-Key was already used for a request with a different body.")
+                        .build());
+                return;
+            }
+            try {
+                requestContext.abortWith(storedResponse.future.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS).toResponse());
+                return;
+            } catch (ExecutionException e) {
+                // The first execution failed without a response worth repeating, so this request runs instead.
+            } catch (TimeoutException e) {
+                requestContext.abortWith(Response.status(Response.Status.CONFLICT)
+                        .entity("A request with this Idempotency-Key is still in progress.")
+                        .build());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        PendingResponse pendingResponse = (PendingResponse) requestContext.getProperty(PENDING_RESPONSE);
+        if (pendingResponse == null) {
+            return;
+        }
+        requestContext.removeProperty(PENDING_RESPONSE);
+        if (responseContext.getStatusInfo().getFamily() == Response.Status.Family.SERVER_ERROR) {
+            fail(pendingResponse);
+            return;
+        }
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        for (Map.Entry<String, List<Object>> header : responseContext.getHeaders().entrySet()) {
+            // Cross-origin headers are added to every response, including replays. The content type is kept separately.
+            if (!header.getKey().startsWith("Access-Control-") && !header.getKey().equalsIgnoreCase("Content-Type")) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        pendingResponse.future.complete(new StoredResponse(responseContext.getStatus(), headers,
+                responseContext.getEntity(), responseContext.getMediaType()));
+    }
+
+    // Removes the entry of a request that failed, so that waiting and later retries execute it again.
+    private void fail(PendingResponse pendingResponse) {
+        responses.asMap().remove(pendingResponse.storeKey, pendingResponse);
+        pendingResponse.future.completeExceptionally(new IllegalStateException("The request failed."));
+    }
+
+    // Catches requests that end without passing the response filter, for example because of an unmapped exception.
+    public ApplicationEventListener newCleanupListener() {
+        RequestEventListener requestEventListener = event -> {
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                PendingResponse pendingResponse = (PendingResponse) event.getContainerRequest().getProperty(PENDING_RESPONSE);
+                if (pendingResponse != null) {
+                    fail(pendingResponse);
+                }
+            }
+        };
+        return new ApplicationEventListener() {
+            @Override
+            public void onEvent(ApplicationEvent event) {
+            }
+
+            @Override
+            public RequestEventListener onRequest(RequestEvent requestEvent) {
+                return requestEventListener;
+            }
+        };
+    }
+
+    // Keys are scoped to the endpoint and the credentials, so different users cannot see each other's responses.
+    // Only a digest is kept, so the store does not hold credentials.
+    private static String getStoreKey(ContainerRequestContext requestContext, String idempotencyKey) {
+        String auth = requestContext.getHeaderString("Authorization");
+        String scope = requestContext.getMethod() + "\n" + requestContext.getUriInfo().getRequestUri() + "\n"
+                + (auth == null ? "" : auth) + "\n" + idempotencyKey;
+        return digest(scope.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Reads the body to digest it and puts it back, so the resource method can still read it.
+    private static String getBodyDigest(ContainerRequestContext requestContext) throws IOException {
+        if (!requestContext.hasEntity()) {
+            return digest(new byte[0]);
+        }
+        byte[] body = requestContext.getEntityStream().readAllBytes();
+        requestContext.setEntityStream(new ByteArrayInputStream(body));
+        return digest(body);
+    }
+
+    private static String digest(byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class PendingResponse {
+        private final String storeKey;
+        private final String bodyDigest;
+        private final CompletableFuture<StoredResponse> future = new CompletableFuture<>();
+
+        private PendingResponse(String storeKey, String bodyDigest) {
+            this.storeKey = storeKey;
+            this.bodyDigest = bodyDigest;
+        }
+    }
+
+    private static class StoredResponse {
+        private final int status;
+        private final MultivaluedMap<String, Object> headers;
+        private final Object entity;
+        private final MediaType mediaType;
+
+        private StoredResponse(int status, MultivaluedMap<String, Object> headers, Object entity, MediaType mediaType) {
+            this.status = status;
+            this.headers = headers;
+            this.entity = entity;
+            this.mediaType = mediaType;
+        }
+
+        private Response toResponse() {
+            Response.ResponseBuilder response = Response.status(status).entity(entity).type(mediaType);
+            headers.forEach((name, values) -> values.forEach(value -> response.header(name, value)));
+            return response.header(IDEMPOTENT_REPLAYED, "true").build();
+        }
+    }
+}
@@ -6,21 +6,25 @@ import jakarta.ws.rs.container.ContainerResponseFilter;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.servlet.ServletContainer;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultExecuteListenerProvider;
 
 import java.io.IOException;
 import java.net.URI;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.util.HashSet;
 import java.util.Set;
 
 public class Main {
+    private static final int BATCH_THREADS = 8;
+
     public static void main(String[] args) throws Exception {
 
         boolean resetActive = "YES".equals(System.getenv("RESET_ACTIVE"));
@@ -45,50 +49,125 @@ public class Main {
             System.out.println("Connected to database.");
         }
 
-        try (Connection connection = DriverManager.getConnection(dbUrl, username, password)) {
-            DSLContext dslContext = DSL.using(connection, SQLDialect.POSTGRES);
-            Migrator migrator = new Migrator(dslContext);
+        try (ConnectionPool connectionPool = new ConnectionPool(dbUrl, username, password);
+             ShoppingListEvents shoppingListEvents = new ShoppingListEvents()) {
+            DSLContext dslContext = DSL.using(connectionPool.getDataSource(), SQLDialect.POSTGRES);
+            Metrics metrics = new Metrics();
+            addConnectionPoolMetrics(metrics, connectionPool);
+            Server server = createServer(Integer.parseInt(System.getenv("PORT")), dslContext, shoppingListEvents, metrics, resetActive);
+            server.setStopAtShutdown(true);
+            server.start();
+            server.join();
+        }
+    }
+
+    public static void addConnectionPoolMetrics(Metrics metrics, ConnectionPool connectionPool) {
+        metrics.addGauge("db_pool_connections_active", "Connections in use.", connectionPool::getActiveConnections);
+        metrics.addGauge("db_pool_connections_idle", "Connections waiting in the pool.", connectionPool::getIdleConnections);
+        metrics.addGauge("db_pool_connections_max", "Maximum size of the pool.", connectionPool::getMaximumPoolSize);
+        metrics.addGauge("db_pool_threads_awaiting_connection", "Threads blocked until a connection is free.", connectionPool::getThreadsAwaitingConnection);
+    }
+
+    public static Server createServer(int port, DSLContext dslContext, ShoppingListEvents shoppingListEvents, boolean resetActive) {
+        return createServer(port, dslContext, shoppingListEvents, new Metrics(), resetActive);
+    }
+
+    // Migrates the database and wires the resources, but leaves starting the server to the caller.
+    public static Server createServer(int port, DSLContext dslContext, ShoppingListEvents shoppingListEvents, Metrics metrics, boolean resetActive) {
+        Migrator migrator = new Migrator(dslContext);
 
-            migrator.migrate();
+        migrator.migrate();
 
-            Server server = new Server(Integer.parseInt(System.getenv("PORT")));
+        Server server = new Server(port);
 
-            ServletContextHandler handler = new ServletContextHandler(ServletContextHandler.SESSIONS);
-            handler.setContextPath("/");
+        ServletContextHandler handler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        handler.setContextPath("/");
 
 
-            final UserDAO userDAO = new UserDAO(dslContext);
-            final UserResource userResource = new UserResource(userDAO, migrator);
-            final ShoppingListDAO shoppingListDAO = new ShoppingListDAO(dslContext);
-            final ShoppingListResource shoppingListResource = new ShoppingListResource(userDAO, shoppingListDAO);
+        // The DAOs get a context that records every statement they run. Migrations are left out.
+        QueryStatistics queryStatistics = QueryStatistics.fromEnvironment();
+        metrics.addCollector(queryStatistics);
+        DSLContext instrumentedDslContext = dslContext.configuration()
+                .deriveAppending(new DefaultExecuteListenerProvider(queryStatistics))
+                .dsl();
 
-            ResourceConfig resourceConfig = new ResourceConfig();
-            Set<Object> instances = new HashSet<>();
-            if (resetActive) {
-                final ResetResource resetResource = new ResetResource(migrator);
-                instances.add(resetResource);
+        final ShoppingListDAO shoppingListDAO = new ShoppingListDAO(instrumentedDslContext);
+        final UserDAO userDAO = new UserDAO(instrumentedDslContext, SessionTokens.fromEnvironment(), shoppingListDAO);
+        final UserResource userResource = new UserResource(userDAO, migrator);
+        shoppingListDAO.addChangeListener(shoppingListEvents);
+        server.addEventListener(new LifeCycle.Listener() {
+            @Override
+            public void lifeCycleStopped(LifeCycle event) {
+                shoppingListDAO.close();
             }
-            instances.add(userResource);
-            instances.add(shoppingListResource);
-            resourceConfig.registerInstances(instances);
-            resourceConfig.register(new ApplicationExceptionMapper());
-            resourceConfig.register(JacksonFeature.class);
-            resourceConfig.register(new ContainerResponseFilter() {
-                @Override
-                public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
-                    responseContext.getHeaders().add("Access-Control-Allow-origin", "*");
-                    responseContext.getHeaders().add("Access-Control-Allow-headers",
-                            "Origin, content-type, accept, authorization");
-                    responseContext.getHeaders().add("Access-Control-Allow-Methods",
-                            "GET, POST, PUT, DELETE, OPTIONS, HEAD");
-                }
-            });
-
-            handler.addServlet(new ServletHolder(new ServletContainer(resourceConfig)), "/*");
-
-            server.setHandler(handler);
-            server.start();
-            server.join();
+        });
+        final ShoppingListResource shoppingListResource = new ShoppingListResource(userDAO, shoppingListDAO, shoppingListEvents);
+        // Runs the operations of batch requests. It is started and stopped with the server.
+        QueuedThreadPool batchThreadPool = new QueuedThreadPool(BATCH_THREADS, 1);
+        batchThreadPool.setName("batch");
+        server.addBean(batchThreadPool);
+        final BatchResource batchResource = new BatchResource(userDAO, shoppingListDAO, batchThreadPool);
+
+        ResourceConfig resourceConfig = new ResourceConfig();
+        Set<Object> instances = new HashSet<>();
+        if (resetActive) {
+            final ResetResource resetResource = new ResetResource(migrator, userDAO);
+            instances.add(resetResource);
         }
+        instances.add(userResource);
+        instances.add(shoppingListResource);
+        instances.add(batchResource);
+        instances.add(new MetricsResource(metrics));
+        resourceConfig.registerInstances(instances);
+        resourceConfig.register(new ApplicationExceptionMapper());
+        IdempotencyFilter idempotencyFilter = new IdempotencyFilter();
+        resourceConfig.register(idempotencyFilter);
+        resourceConfig.register(idempotencyFilter.newCleanupListener());
+        resourceConfig.register(JacksonFeature.class);
+        resourceConfig.register(SseFeature.class);
+        resourceConfig.register(new RequestLatencyFeature(metrics, queryStatistics));
+        resourceConfig.register(new ContainerResponseFilter() {
+            @Override
+            public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+                responseContext.getHeaders().add("Access-Control-Allow-origin", "*");
+                responseContext.getHeaders().add("Access-Control-Allow-headers",
+                        "Origin, content-type, accept, authorization, if-none-match, prefer, idempotency-key");
+                responseContext.getHeaders().add("Access-Control-Expose-Headers", "ETag, Preference-Applied, Idempotent-Replayed");
+                responseContext.getHeaders().add("Access-Control-Allow-Methods",
+                        "GET, POST, PUT, DELETE, OPTIONS, HEAD");
+            }
+        });
+
+        // Server-sent event subscriptions suspend their request, so they do not hold a server thread while idle.
+        ServletHolder servletHolder = new ServletHolder(new ServletContainer(resourceConfig));
+        servletHolder.setAsyncSupported(true);
+        handler.addServlet(servletHolder, "/*");
+
+        server.setHandler(handler);
+        addApplicationMetrics(metrics, server, batchThreadPool, userDAO, shoppingListDAO, shoppingListEvents);
+        return server;
+    }
+
+    private static void addApplicationMetrics(Metrics metrics, Server server, QueuedThreadPool batchThreadPool, UserDAO userDAO,
+                                              ShoppingListDAO shoppingListDAO, ShoppingListEvents shoppingListEvents) {
+        QueuedThreadPool serverThreadPool = (QueuedThreadPool) server.getThreadPool();
+        metrics.addGauge("server_threads", "Threads of the server thread pool.", serverThreadPool::getThreads);
+        metrics.addGauge("server_threads_busy", "Busy threads of the server thread pool.", serverThreadPool::getBusyThreads);
+        metrics.addGauge("batch_threads_busy", "Busy threads running batch operations.", batchThreadPool::getBusyThreads);
+        metrics.addCounter("enriched_shopping_list_cache_hits_total", "Enriched shopping lists served from the cache.",
+                () -> shoppingListDAO.getEnrichedShoppingListCacheStats().hitCount());
+        metrics.addCounter("enriched_shopping_list_cache_misses_total", "Enriched shopping lists read from the database.",
+                () -> shoppingListDAO.getEnrichedShoppingListCacheStats().missCount());
+        metrics.addCounter("enriched_shopping_list_cache_evictions_total", "Enriched shopping lists evicted from the cache.",
+                () -> shoppingListDAO.getEnrichedShoppingListCacheStats().evictionCount());
+        metrics.addGauge("enriched_shopping_list_cache_bytes", "Estimated size of the cached enriched shopping lists.",
+                shoppingListDAO::getEnrichedShoppingListCacheBytes);
+        metrics.addCounter("shopping_list_rebalance_failures_total", "Background rebalances of sort orders that failed.",
+                shoppingListDAO::getFailedRebalances);
+        metrics.addCounter("authentication_cache_hits_total", "Authentications answered from the cache.",
+                () -> userDAO.getAuthenticationCacheStats().hitCount());
+        metrics.addCounter("authentication_cache_misses_total", "Authentications that hashed the password.",
+                () -> userDAO.getAuthenticationCacheStats().missCount());
+        metrics.addGauge("shopping_list_subscriptions", "Open server-sent event subscriptions.", shoppingListEvents::getSubscriptionCount);
     }
 }
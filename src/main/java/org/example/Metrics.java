@@ -0,0 +1,176 @@
+package org.example;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.DoubleSupplier;
+
+// Collects request latencies and application gauges and renders them in the Prometheus text format.
+public class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final List<RequestLatency> requestLatencies = new CopyOnWriteArrayList<>();
+    private final List<Sample> samples = new CopyOnWriteArrayList<>();
+    private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+    public RequestLatency newRequestLatency(String method, String pathTemplate) {
+        RequestLatency requestLatency = new RequestLatency(method, pathTemplate);
+        requestLatencies.add(requestLatency);
+        return requestLatency;
+    }
+
+    public void addGauge(String name, String help, DoubleSupplier value) {
+        samples.add(new Sample(name, help, "gauge", value));
+    }
+
+    public void addCounter(String name, String help, DoubleSupplier value) {
+        samples.add(new Sample(name, help, "counter", value));
+    }
+
+    // For metrics with labels that are only known while the application runs.
+    public void addCollector(Collector collector) {
+        collectors.add(collector);
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP http_request_duration_seconds Latency of the resource methods, by path template and status.\n");
+        out.append("# TYPE http_request_duration_seconds summary\n");
+        for (RequestLatency requestLatency : requestLatencies) {
+            requestLatency.appendTo(out);
+        }
+        out.append("# HELP db_queries_per_request Statements executed by one request of the resource methods, by path template.\n");
+        out.append("# TYPE db_queries_per_request summary\n");
+        for (RequestLatency requestLatency : requestLatencies) {
+            requestLatency.appendQueriesTo(out);
+        }
+        for (Sample sample : samples) {
+            out.append("# HELP ").append(sample.name).append(' ').append(sample.help).append('\n');
+            out.append("# TYPE ").append(sample.name).append(' ').append(sample.type).append('\n');
+            out.append(sample.name).append(' ').append(format(sample.value.getAsDouble())).append('\n');
+        }
+        for (Collector collector : collectors) {
+            collector.appendTo(out);
+        }
+        return out.toString();
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public interface Collector {
+        void appendTo(StringBuilder out);
+    }
+
+    // The latencies of one resource method. Recording is lock-free and, once a status has been seen, does not allocate.
+    public static class RequestLatency {
+        private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+        private static final long HIGHEST_TRACKABLE_QUERIES = 100000;
+        private static final int STATUS_CODES = 600;
+
+        private final String method;
+        private final String pathTemplate;
+        private final AtomicReferenceArray<StatusLatency> latencyByStatus = new AtomicReferenceArray<>(STATUS_CODES);
+        private final Recorder queryRecorder = new Recorder(1, HIGHEST_TRACKABLE_QUERIES, 2);
+        private final Histogram queryTotal = new Histogram(1, HIGHEST_TRACKABLE_QUERIES, 2);
+        private Histogram queryInterval;
+
+        private RequestLatency(String method, String pathTemplate) {
+            this.method = method;
+            this.pathTemplate = pathTemplate;
+        }
+
+        public void record(int status, long nanos) {
+            int index = status >= 0 && status < STATUS_CODES ? status : 0;
+            StatusLatency statusLatency = latencyByStatus.get(index);
+            if (statusLatency == null) {
+                latencyByStatus.compareAndSet(index, null, new StatusLatency());
+                statusLatency = latencyByStatus.get(index);
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            statusLatency.recorder.recordValue(Math.max(1, Math.min(micros, HIGHEST_TRACKABLE_MICROS)));
+        }
+
+        public void recordQueries(int queries) {
+            queryRecorder.recordValue(Math.min(queries, HIGHEST_TRACKABLE_QUERIES));
+        }
+
+        private void appendTo(StringBuilder out) {
+            for (int status = 0; status < STATUS_CODES; status++) {
+                StatusLatency statusLatency = latencyByStatus.get(status);
+                if (statusLatency == null) {
+                    continue;
+                }
+                synchronized (statusLatency) {
+                    Histogram total = statusLatency.collect();
+                    String labels = "method=\"" + method + "\",path=\"" + escape(pathTemplate) + "\",status=\"" + status + "\"";
+                    for (double quantile : QUANTILES) {
+                        out.append("http_request_duration_seconds{").append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                                .append(format(total.getValueAtPercentile(quantile * 100) / 1e6)).append('\n');
+                    }
+                    out.append("http_request_duration_seconds_sum{").append(labels).append("} ")
+                            .append(format(total.getMean() * total.getTotalCount() / 1e6)).append('\n');
+                    out.append("http_request_duration_seconds_count{").append(labels).append("} ")
+                            .append(total.getTotalCount()).append('\n');
+                }
+            }
+        }
+
+        private synchronized void appendQueriesTo(StringBuilder out) {
+            queryInterval = queryRecorder.getIntervalHistogram(queryInterval);
+            queryTotal.add(queryInterval);
+            if (queryTotal.getTotalCount() == 0) {
+                return;
+            }
+            String labels = "method=\"" + method + "\",path=\"" + escape(pathTemplate) + "\"";
+            for (double quantile : QUANTILES) {
+                out.append("db_queries_per_request{").append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(queryTotal.getValueAtPercentile(quantile * 100)).append('\n');
+            }
+            out.append("db_queries_per_request_sum{").append(labels).append("} ")
+                    .append(format(queryTotal.getMean() * queryTotal.getTotalCount())).append('\n');
+            out.append("db_queries_per_request_count{").append(labels).append("} ")
+                    .append(queryTotal.getTotalCount()).append('\n');
+        }
+    }
+
+    private static class StatusLatency {
+        private final Recorder recorder = new Recorder(1, RequestLatency.HIGHEST_TRACKABLE_MICROS, 2);
+        private final Histogram total = new Histogram(1, RequestLatency.HIGHEST_TRACKABLE_MICROS, 2);
+        private Histogram interval;
+
+        // Moves what was recorded since the last scrape into the running total. Only scrapes lock the StatusLatency,
+        // recording never does.
+        private Histogram collect() {
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            return total;
+        }
+    }
+
+    private static class Sample {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final DoubleSupplier value;
+
+        private Sample(String name, String help, String type, DoubleSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
@@ -17,6 +17,7 @@ import java.util.function.Function;
 
 import static org.jooq.impl.DSL.field;
 import static org.jooq.impl.DSL.table;
+import static org.jooq.impl.SQLDataType.BIGINT;
 import static org.jooq.impl.SQLDataType.BOOLEAN;
 import static org.jooq.impl.SQLDataType.INTEGER;
 import static org.jooq.impl.SQLDataType.VARCHAR;
@@ -134,6 +135,78 @@ public class Migrator {
                     )
                     .execute();
         }));
+        migrationSteps.add(new MigrationStep("Adding indexes for the hot lookup columns.", ctx -> {
+            ctx.createIndexIfNotExists("idx_shopping_list_authorization_user")
+                    .on("shopping_list_authorization", "user_id", "invitation_accepted", "shopping_list_id")
+                    .execute();
+            ctx.createIndexIfNotExists("idx_shopping_list_authorization_shopping_list")
+                    .on("shopping_list_authorization", "shopping_list_id", "invitation_accepted", "user_id")
+                    .execute();
+            ctx.createIndexIfNotExists("idx_shopping_list_item_shopping_list")
+                    .on("shopping_list_item", "shopping_list_id", "sort_order")
+                    .execute();
+            ctx.createIndexIfNotExists("idx_shopping_list_owner")
+                    .on("shopping_list", "owner", "id")
+                    .execute();
+        }));
+        migrationSteps.add(new MigrationStep("Adding revisions and tombstones for delta sync.", ctx -> {
+            ctx.alterTable("shopping_list")
+                    .addColumn("revision", BIGINT.nullable(false).defaultValue(0L))
+                    .execute();
+            ctx.alterTable("shopping_list_authorization")
+                    .addColumn("revision", BIGINT.nullable(false).defaultValue(0L))
+                    .execute();
+            ctx.alterTable("shopping_list_item")
+                    .addColumn("revision", BIGINT.nullable(false).defaultValue(0L))
+                    .execute();
+            ctx.createTableIfNotExists("shopping_list_tombstone")
+                    .column("shopping_list_id", VARCHAR(36))
+                    .column("kind", VARCHAR(8))
+                    .column("entity_id", VARCHAR(36))
+                    .column("revision", BIGINT)
+                    .execute();
+            ctx.alterTable("shopping_list_tombstone")
+                    .add(
+                            DSL.constraint("fk_shopping_list_tombstone_shopping_list").foreignKey("shopping_list_id").references("shopping_list", "id")
+                    )
+                    .execute();
+            ctx.createIndexIfNotExists("idx_shopping_list_tombstone_shopping_list")
+                    .on("shopping_list_tombstone", "shopping_list_id", "revision")
+                    .execute();
+        }));
+        migrationSteps.add(new MigrationStep("Adding a sort order counter to shopping lists.", ctx -> {
+            ctx.alterTable("shopping_list")
+                    .addColumn("next_sort_order", BIGINT.nullable(false).defaultValue(0L))
+                    .execute();
+            ctx.update(table("shopping_list"))
+                    .set(field("next_sort_order", Long.class), ctx.select(DSL.coalesce(DSL.max(field("sort_order", Long.class)).plus(1L), 0L))
+                            .from("shopping_list_item")
+                            .where(field("shopping_list_item.shopping_list_id").eq(field("shopping_list.id"))))
+                    .execute();
+        }));
+        migrationSteps.add(new MigrationStep("Spreading item sort orders apart.", ctx -> {
+            ctx.alterTable("shopping_list_item")
+                    .alterColumn("sort_order")
+                    .set(BIGINT)
+                    .execute();
+            ctx.update(table("shopping_list_item"))
+                    .set(field("sort_order", Long.class), field("sort_order", Long.class).times(ShoppingListDAO.SORT_ORDER_GAP))
+                    .execute();
+            ctx.update(table("shopping_list"))
+                    .set(field("next_sort_order", Long.class), field("next_sort_order", Long.class).times(ShoppingListDAO.SORT_ORDER_GAP))
+                    .execute();
+        }));
+        migrationSteps.add(new MigrationStep("Adding a retention for tombstones.", ctx -> {
+            ctx.alterTable("shopping_list_tombstone")
+                    .addColumn("created_at", BIGINT.nullable(false).defaultValue(0L))
+                    .execute();
+            ctx.update(table("shopping_list_tombstone"))
+                    .set(field("created_at", Long.class), System.currentTimeMillis())
+                    .execute();
+            ctx.alterTable("shopping_list")
+                    .addColumn("pruned_revision", BIGINT.nullable(false).defaultValue(0L))
+                    .execute();
+        }));
 //        migrationSteps.add(new MigrationStep("Shopping list item 1:N table", ctx -> {
 //            ctx.createTableIfNotExists("shopping_list_shopping_list_item")
 //                    .column("shopping_list_id", VARCHAR(36))
@@ -156,6 +229,7 @@ public class Migrator {
     public void reset() {
         dslContext.dropTableIfExists("migration").execute();
         dslContext.dropTableIfExists("shopping_list_shopping_list_item").execute();
+        dslContext.dropTableIfExists("shopping_list_tombstone").execute();
         dslContext.dropTableIfExists("shopping_list_item").execute();
         dslContext.dropTableIfExists("shopping_list_authorization").execute();
         dslContext.dropTableIfExists("shopping_list").execute();
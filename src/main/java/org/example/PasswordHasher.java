@@ -0,0 +1,46 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+public class PasswordHasher {
+    private static final int SALT_LENGTH = 16;
+
+    // MessageDigest and SecureRandom instances are not shared between threads, so hashing needs no locking.
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(PasswordHasher::newDigest);
+    private final ThreadLocal<SecureRandom> randoms = ThreadLocal.withInitial(PasswordHasher::newRandom);
+
+    public String newSalt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        randoms.get().nextBytes(salt);
+        return Base64.getEncoder().encodeToString(salt);
+    }
+
+    public String hash(String password, String salt) {
+        byte[] saltBytes = Base64.getDecoder().decode(salt);
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        MessageDigest digest = digests.get();
+        digest.update(saltBytes);
+        digest.update(passwordBytes);
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+}
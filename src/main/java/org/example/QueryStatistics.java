@@ -0,0 +1,173 @@
+package org.example;
+
+import org.jooq.ExecuteContext;
+import org.jooq.impl.DefaultExecuteListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+// Counts executions, time and rows per SQL shape, logs the shape of slow statements and counts the statements each
+// request runs. A shape is the SQL with literals replaced by ? and lists of placeholders collapsed, so the same
+// query with different values or IN list lengths is one shape.
+public class QueryStatistics extends DefaultExecuteListener implements Metrics.Collector {
+    private static final long serialVersionUID = 1L;
+    static final int MAX_SHAPES = 1000;
+    static final String OTHER_SHAPE = "other";
+
+    private static final long DEFAULT_SLOW_QUERY_THRESHOLD_MS = 200;
+    private static final int NO_REQUEST = -1;
+    private static final String EXECUTION = QueryStatistics.class.getName() + ".execution";
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    private static final Pattern VALUES_LIST = Pattern.compile("(\\(\\?\\.\\.\\.\\))(?:\\s*,\\s*\\(\\?\\.\\.\\.\\))+");
+
+    private final long slowQueryThresholdNanos;
+    private final Consumer<String> slowQueryLog;
+    private final Map<String, ShapeStatistics> statisticsByShape = new ConcurrentHashMap<>();
+    // Holds the number of statements of the request the thread is serving, or NO_REQUEST. The array stays with the
+    // thread, so pooled server threads do not allocate per request.
+    private final ThreadLocal<int[]> requestQueryCount = ThreadLocal.withInitial(() -> new int[]{NO_REQUEST});
+
+    public QueryStatistics(long slowQueryThresholdMillis, Consumer<String> slowQueryLog) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public static QueryStatistics fromEnvironment() {
+        String threshold = System.getenv("SLOW_QUERY_THRESHOLD_MS");
+        return new QueryStatistics(threshold == null ? DEFAULT_SLOW_QUERY_THRESHOLD_MS : Long.parseLong(threshold), System.out::println);
+    }
+
+    // Starts counting the statements the current thread runs, until finishRequest is called.
+    public void startRequest() {
+        requestQueryCount.get()[0] = 0;
+    }
+
+    public int finishRequest() {
+        int[] count = requestQueryCount.get();
+        int queries = Math.max(count[0], 0);
+        count[0] = NO_REQUEST;
+        return queries;
+    }
+
+    @Override
+    public void executeStart(ExecuteContext ctx) {
+        int[] count = requestQueryCount.get();
+        if (count[0] != NO_REQUEST) {
+            count[0]++;
+        }
+        ctx.data(EXECUTION, new Execution(System.nanoTime()));
+    }
+
+    @Override
+    public void recordEnd(ExecuteContext ctx) {
+        Execution execution = (Execution) ctx.data(EXECUTION);
+        if (execution != null && ctx.recordLevel() == 0) {
+            execution.rows++;
+        }
+    }
+
+    @Override
+    public void executeEnd(ExecuteContext ctx) {
+        Execution execution = (Execution) ctx.data(EXECUTION);
+        if (execution != null && ctx.rows() > 0) {
+            execution.rows += ctx.rows();
+        }
+    }
+
+    // Called once the statement and the fetching of its results are done, also when they failed.
+    @Override
+    public void end(ExecuteContext ctx) {
+        Execution execution = (Execution) ctx.data(EXECUTION);
+        if (execution == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - execution.start;
+        String sql = ctx.sql() != null ? ctx.sql() : String.join("; ", ctx.batchSQL());
+        String shape = normalize(sql);
+        ShapeStatistics statistics = getStatistics(shape);
+        statistics.executions.increment();
+        statistics.nanos.add(nanos);
+        statistics.rows.add(execution.rows);
+        // Bind values are left out of the log, they include password hashes and salts.
+        if (nanos >= slowQueryThresholdNanos) {
+            slowQueryLog.accept("Slow query (" + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, " + execution.rows + " rows): " + shape);
+        }
+    }
+
+    private ShapeStatistics getStatistics(String shape) {
+        ShapeStatistics statistics = statisticsByShape.get(shape);
+        if (statistics != null) {
+            return statistics;
+        }
+        if (statisticsByShape.size() >= MAX_SHAPES) {
+            shape = OTHER_SHAPE;
+        }
+        return statisticsByShape.computeIfAbsent(shape, s -> new ShapeStatistics());
+    }
+
+    static String normalize(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = PLACEHOLDER_LIST.matcher(shape).replaceAll("?...");
+        shape = VALUES_LIST.matcher(shape).replaceAll("$1...");
+        return shape;
+    }
+
+    public long getExecutions(String shape) {
+        ShapeStatistics statistics = statisticsByShape.get(shape);
+        return statistics == null ? 0 : statistics.executions.sum();
+    }
+
+    public long getRows(String shape) {
+        ShapeStatistics statistics = statisticsByShape.get(shape);
+        return statistics == null ? 0 : statistics.rows.sum();
+    }
+
+    @Override
+    public void appendTo(StringBuilder out) {
+        List<Map.Entry<String, ShapeStatistics>> entries = new ArrayList<>(statisticsByShape.entrySet());
+        entries.sort(Comparator.comparing(Map.Entry::getKey));
+        out.append("# HELP db_query_executions_total Executions by SQL shape.\n");
+        out.append("# TYPE db_query_executions_total counter\n");
+        for (Map.Entry<String, ShapeStatistics> entry : entries) {
+            out.append("db_query_executions_total{sql=\"").append(Metrics.escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue().executions.sum()).append('\n');
+        }
+        out.append("# HELP db_query_seconds_total Time spent executing and fetching, by SQL shape.\n");
+        out.append("# TYPE db_query_seconds_total counter\n");
+        for (Map.Entry<String, ShapeStatistics> entry : entries) {
+            out.append("db_query_seconds_total{sql=\"").append(Metrics.escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue().nanos.sum() / 1e9).append('\n');
+        }
+        out.append("# HELP db_query_rows_total Rows fetched or modified, by SQL shape.\n");
+        out.append("# TYPE db_query_rows_total counter\n");
+        for (Map.Entry<String, ShapeStatistics> entry : entries) {
+            out.append("db_query_rows_total{sql=\"").append(Metrics.escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue().rows.sum()).append('\n');
+        }
+    }
+
+    private static class Execution {
+        private final long start;
+        private long rows;
+
+        private Execution(long start) {
+            this.start = start;
+        }
+    }
+
+    private static class ShapeStatistics {
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+    }
+}
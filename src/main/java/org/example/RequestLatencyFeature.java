@@ -0,0 +1,118 @@
+package org.example;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.DynamicFeature;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+// Gives every resource method its own latency recorder, so a request finds its recorder without a lookup. The
+// statements a request runs are counted as well, so endpoints that query once per item stand out.
+public class RequestLatencyFeature implements DynamicFeature {
+    private final Metrics metrics;
+    private final QueryStatistics queryStatistics;
+
+    public RequestLatencyFeature(Metrics metrics, QueryStatistics queryStatistics) {
+        this.metrics = metrics;
+        this.queryStatistics = queryStatistics;
+    }
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        Method resourceMethod = resourceInfo.getResourceMethod();
+        String pathTemplate = "/" + trimSlashes(resourceInfo.getResourceClass().getAnnotation(Path.class))
+                + "/" + trimSlashes(resourceMethod.getAnnotation(Path.class));
+        context.register(new RequestLatencyFilter(metrics.newRequestLatency(getHttpMethod(resourceMethod), trimSlashes(pathTemplate, "/")),
+                queryStatistics));
+    }
+
+    private static String getHttpMethod(Method resourceMethod) {
+        for (Annotation annotation : resourceMethod.getAnnotations()) {
+            HttpMethod httpMethod = annotation.annotationType().getAnnotation(HttpMethod.class);
+            if (httpMethod != null) {
+                return httpMethod.value();
+            }
+        }
+        return "";
+    }
+
+    private static String trimSlashes(Path path) {
+        return path == null ? "" : trimSlashes(path.value(), "");
+    }
+
+    private static String trimSlashes(String path, String prefix) {
+        return prefix + path.replaceAll("^/+|/+$", "");
+    }
+
+    // Runs first on the request and last on the response. Responses with an entity are timed until the entity is
+    // written, so serializing a large list counts towards the latency. Statements are only counted on the thread that
+    // handles the request, so the operations of a batch request are not attributed to it. The filters and the
+    // interceptor of a request run on the thread that handles it, so the timing is kept in a per-thread object that
+    // is reused instead of a request property, which would box the start time for every request.
+    @Priority(Integer.MIN_VALUE)
+    private static class RequestLatencyFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+        private static final ThreadLocal<Timing> TIMING = ThreadLocal.withInitial(Timing::new);
+
+        private final Metrics.RequestLatency requestLatency;
+        private final QueryStatistics queryStatistics;
+
+        private RequestLatencyFilter(Metrics.RequestLatency requestLatency, QueryStatistics queryStatistics) {
+            this.requestLatency = requestLatency;
+            this.queryStatistics = queryStatistics;
+        }
+
+        @Override
+        public void filter(ContainerRequestContext requestContext) {
+            Timing timing = TIMING.get();
+            timing.start = System.nanoTime();
+            timing.status = 0;
+            timing.running = true;
+            queryStatistics.startRequest();
+        }
+
+        @Override
+        public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+            Timing timing = TIMING.get();
+            if (!timing.running) {
+                return;
+            }
+            requestLatency.recordQueries(queryStatistics.finishRequest());
+            if (responseContext.hasEntity()) {
+                timing.status = responseContext.getStatus();
+            } else {
+                timing.running = false;
+                requestLatency.record(responseContext.getStatus(), System.nanoTime() - timing.start);
+            }
+        }
+
+        @Override
+        public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+            try {
+                context.proceed();
+            } finally {
+                Timing timing = TIMING.get();
+                if (timing.running && timing.status != 0) {
+                    timing.running = false;
+                    requestLatency.record(timing.status, System.nanoTime() - timing.start);
+                }
+            }
+        }
+    }
+
+    private static class Timing {
+        private long start;
+        private int status;
+        private boolean running;
+    }
+}
@@ -13,9 +13,11 @@ import jakarta.ws.rs.core.MediaType;
 public class ResetResource {
 
     private final Migrator migrator;
+    private final UserDAO userDAO;
 
-    public ResetResource(Migrator migrator) {
+    public ResetResource(Migrator migrator, UserDAO userDAO) {
         this.migrator = migrator;
+        this.userDAO = userDAO;
     }
 
     @GET
@@ -30,6 +32,7 @@ public class ResetResource {
     public void reset() {
         migrator.reset();
         migrator.migrate();
+        userDAO.clearCaches();
     }
 
 }
@@ -0,0 +1,107 @@
+package org.example;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+public class SessionTokens {
+    public static final String BEARER = "Bearer";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Duration DEFAULT_TTL = Duration.ofHours(24);
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final Clock clock;
+    private final ThreadLocal<Mac> macs;
+
+    public SessionTokens() {
+        this(newSecret(), DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    public SessionTokens(byte[] secret, Duration ttl, Clock clock) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttl = ttl;
+        this.clock = clock;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public static SessionTokens fromEnvironment() {
+        String secret = System.getenv("SESSION_TOKEN_SECRET");
+        String ttlMinutes = System.getenv("SESSION_TOKEN_TTL_MINUTES");
+        return new SessionTokens(
+                secret == null ? newSecret() : Base64.getDecoder().decode(secret),
+                ttlMinutes == null ? DEFAULT_TTL : Duration.ofMinutes(Long.parseLong(ttlMinutes)),
+                Clock.systemUTC());
+    }
+
+    public static boolean isSessionToken(String auth) {
+        return auth != null && auth.startsWith(BEARER + " ");
+    }
+
+    public String issue(User user) {
+        long expiry = clock.instant().plus(ttl).getEpochSecond();
+        String payload = encode(user.getId()) + "." + encode(user.getVersion()) + "." + encode(user.getName()) + "." + expiry;
+        return BEARER + " " + payload + "." + sign(payload);
+    }
+
+    // Returns the user the token was issued for. The version in the returned user is the one at issue time.
+    public User verify(String auth) throws ApplicationException {
+        if (!isSessionToken(auth)) {
+            throw new ApplicationException("Wrong authentication method.");
+        }
+        String token = auth.substring(BEARER.length() + 1);
+        int signatureStart = token.lastIndexOf('.');
+        if (signatureStart < 0) {
+            throw new ApplicationException("Invalid session token.");
+        }
+        String payload = token.substring(0, signatureStart);
+        byte[] signature = token.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(signature, sign(payload).getBytes(StandardCharsets.US_ASCII))) {
+            throw new ApplicationException("Invalid session token.");
+        }
+        String[] words = payload.split("\\.");
+        if (words.length != 4) {
+            throw new ApplicationException("Invalid session token.");
+        }
+        if (Long.parseLong(words[3]) <= clock.instant().getEpochSecond()) {
+            throw new ApplicationException("Session token expired.");
+        }
+        return new User(decode(words[0]), decode(words[1]), decode(words[2]), null);
+    }
+
+    private String sign(String payload) {
+        byte[] signature = macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM + ".", e);
+        }
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String value) {
+        return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] newSecret() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ShoppingListChange {
+    public static final String RENAME = "rename";
+    public static final String DELETE = "delete";
+    public static final String INVITE = "invite";
+    public static final String WITHDRAW_INVITATION = "withdraw-invitation";
+    public static final String ACCEPT_INVITATION = "accept-invitation";
+    public static final String REJECT_INVITATION = "reject-invitation";
+    public static final String LEAVE = "leave";
+    public static final String UPDATE_USER = "update-user";
+    public static final String ADD_ITEM = "add-item";
+    public static final String REMOVE_ITEM = "remove-item";
+    public static final String SET_BOUGHT = "set-bought";
+    public static final String SET_UNBOUGHT = "set-unbought";
+    public static final String MOVE_ITEM = "move-item";
+    public static final String REORDER_ITEMS = "reorder-items";
+    public static final String UPDATE_ITEMS = "update-items";
+
+    private String shoppingListId;
+    private long revision;
+    private String change;
+    private String entityId;
+
+    public ShoppingListChange(@JsonProperty("shoppingListId") String shoppingListId,
+                              @JsonProperty("revision") long revision,
+                              @JsonProperty("change") String change,
+                              @JsonProperty("entityId") String entityId) {
+        this.shoppingListId = shoppingListId;
+        this.revision = revision;
+        this.change = change;
+        this.entityId = entityId;
+    }
+
+    public String getShoppingListId() {
+        return shoppingListId;
+    }
+
+    public void setShoppingListId(String shoppingListId) {
+        this.shoppingListId = shoppingListId;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    public String getChange() {
+        return change;
+    }
+
+    public void setChange(String change) {
+        this.change = change;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    @Override
+    public String toString() {
+        return "ShoppingListChange{" +
+                "shoppingListId='" + shoppingListId + '\'' +
+                ", revision=" + revision +
+                ", change='" + change + '\'' +
+                ", entityId='" + entityId + '\'' +
+                '}';
+    }
+}
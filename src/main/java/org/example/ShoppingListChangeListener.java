@@ -0,0 +1,6 @@
+package org.example;
+
+public interface ShoppingListChangeListener {
+    // Called after the transaction of a mutation has committed, on the thread that made the mutation.
+    void shoppingListChanged(ShoppingListChange change);
+}
@@ -1,21 +1,128 @@
 package org.example;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.jooq.DSLContext;
 import org.jooq.Record;
 import org.jooq.RecordMapper;
+import org.jooq.Result;
+import org.jooq.Query;
+import org.jooq.Select;
 import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import static org.jooq.impl.DSL.castNull;
 import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.min;
 import static org.jooq.impl.DSL.table;
+import static org.jooq.impl.DSL.when;
+
+public class ShoppingListDAO implements AutoCloseable {
+    private static final String KIND_SHOPPING_LIST = "L";
+    private static final String KIND_MEMBER = "M";
+    private static final String KIND_INVITED_USER = "I";
+    private static final String KIND_ITEM = "T";
+    private static final String TOMBSTONE_USER = "USER";
+    private static final String TOMBSTONE_ITEM = "ITEM";
+    // Tombstones are deleted after this time. Clients that synced before get the whole list again.
+    static final Duration TOMBSTONE_RETENTION = Duration.ofDays(30);
+    private static final long DEFAULT_ENRICHED_SHOPPING_LIST_CACHE_BYTES = 32L * 1024 * 1024;
+    // Items are numbered this far apart, so an item can be moved between two others by updating only its own row.
+    static final long SORT_ORDER_GAP = 65536;
+    // Once a move leaves less room than this next to an item, the list is renumbered in the background.
+    static final long MIN_SORT_ORDER_GAP = 64;
+    static final int MAX_ITEM_OPERATIONS = 1000;
+    // Lists waiting for a rebalance beyond this are skipped; a later move schedules them again.
+    private static final int MAX_PENDING_REBALANCES = 1000;
+    private static final Logger LOGGER = Logger.getLogger(ShoppingListDAO.class.getName());
 
-public class ShoppingListDAO {
     private final DSLContext dslContext;
+    private final List<ShoppingListChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    // Only holds lists as they were read from the database. Callers always get copies, so they cannot modify an entry.
+    private final Cache<String, EnrichedShoppingList> enrichedShoppingListCache;
+    // Caffeine evicts entries that exceed the maximum weight only after they were added, so a size of 0 skips the cache.
+    private final boolean enrichedShoppingListCacheEnabled;
+    // Loads that are running, keyed by list id and version. Concurrent readers of the same version wait for them.
+    private final Map<String, CompletableFuture<EnrichedShoppingList>> inFlightLoads = new ConcurrentHashMap<>();
+    private final Executor backgroundExecutor;
+    // The executor this DAO created for itself, or null if the caller passed one in and shuts it down.
+    private final ExecutorService ownedBackgroundExecutor;
+    private final Set<String> pendingRebalances = ConcurrentHashMap.newKeySet();
+    private final LongAdder failedRebalances = new LongAdder();
 
     public ShoppingListDAO(DSLContext dslContext) {
+        this(dslContext, DEFAULT_ENRICHED_SHOPPING_LIST_CACHE_BYTES);
+    }
+
+    public ShoppingListDAO(DSLContext dslContext, long enrichedShoppingListCacheBytes) {
+        this(dslContext, enrichedShoppingListCacheBytes, newBackgroundExecutor(), true);
+    }
+
+    public ShoppingListDAO(DSLContext dslContext, long enrichedShoppingListCacheBytes, Executor backgroundExecutor) {
+        this(dslContext, enrichedShoppingListCacheBytes, backgroundExecutor, false);
+    }
+
+    private ShoppingListDAO(DSLContext dslContext, long enrichedShoppingListCacheBytes, Executor backgroundExecutor, boolean ownsBackgroundExecutor) {
         this.dslContext = dslContext;
+        this.backgroundExecutor = backgroundExecutor;
+        this.ownedBackgroundExecutor = ownsBackgroundExecutor ? (ExecutorService) backgroundExecutor : null;
+        this.enrichedShoppingListCacheEnabled = enrichedShoppingListCacheBytes > 0;
+        this.enrichedShoppingListCache = Caffeine.newBuilder()
+                .maximumWeight(enrichedShoppingListCacheBytes)
+                .weigher((String id, EnrichedShoppingList enrichedShoppingList) -> estimateSize(enrichedShoppingList))
+                .recordStats()
+                .build();
+    }
+
+    // Rebalances block on the database, so they get a thread of their own instead of a shared pool. The thread ends
+    // when it has been idle for a minute.
+    private static ExecutorService newBackgroundExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(MAX_PENDING_REBALANCES), runnable -> {
+                    Thread thread = new Thread(runnable, "shopping-list-rebalance");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Stops the background work of this DAO. A rebalance that is running is interrupted and rolled back.
+    @Override
+    public void close() {
+        if (ownedBackgroundExecutor != null) {
+            ownedBackgroundExecutor.shutdownNow();
+        }
+    }
+
+    public void addChangeListener(ShoppingListChangeListener changeListener) {
+        changeListeners.add(changeListener);
     }
 
     public ShoppingList getShoppingList(User authenticatedUser, String id) {
@@ -32,6 +139,16 @@ public class ShoppingListDAO {
         return shoppingLists.get(0);
     }
 
+    public String getShoppingListVersion(User authenticatedUser, String id) {
+        return dslContext.select(field("version")).from("shopping_list")
+                .join("shopping_list_authorization")
+                .on(field("id").eq(field("shopping_list_id")))
+                .where(field("id").eq(id))
+                .and(field("user_id").eq(authenticatedUser.getId()))
+                .and(field("invitation_accepted").eq(true))
+                .fetchOne(0, String.class);
+    }
+
     public List<ShoppingList> getOwnShoppingLists(User authenticatedUser) {
         return dslContext.selectFrom("shopping_list")
                 .where(field("owner").eq(authenticatedUser.getId()))
@@ -75,27 +192,36 @@ public class ShoppingListDAO {
         if (!ShoppingList.isNameValid(newName)) {
             throw new ApplicationException("Invalid name.");
         }
-        String newVersion = UUID.randomUUID().toString();
+        long revision;
         try {
-            int count = dslContext.update(table("shopping_list"))
-                    .set(field("version"), newVersion)
-                    .set(field("name"), newName)
-                    .where(field("id").eq(id))
-                    .and(field("owner").eq(authenticatedUser.getId()))
-                    .execute();
-            if (count == 0) {
-                throw new ApplicationException("Cannot rename ShoppingList.");
-            }
+            revision = dslContext.transactionResult(configuration -> {
+                DSLContext ctx = DSL.using(configuration);
+                int count = ctx.update(table("shopping_list"))
+                        .set(field("name"), newName)
+                        .where(field("id").eq(id))
+                        .and(field("owner").eq(authenticatedUser.getId()))
+                        .execute();
+                if (count == 0) {
+                    throw new ApplicationException("Cannot rename ShoppingList.");
+                }
+                return updateShoppingListRevision(ctx, id);
+            });
         } catch (DataAccessException e) {
             throw new ApplicationException("Cannot rename ShoppingList.");
         }
+        notifyChange(id, revision, ShoppingListChange.RENAME, null);
         return getShoppingList(authenticatedUser, id);
     }
 
     public ShoppingList deleteShoppingList(User authenticatedUser, String id) {
         ShoppingList shoppingList = getShoppingList(authenticatedUser, id);
+        long revision;
         try {
-            dslContext.transaction(configuration -> {
+            revision = dslContext.transactionResult(configuration -> {
+                Long newRevision = updateShoppingListRevision(DSL.using(configuration), id);
+                DSL.using(configuration).deleteFrom(table("shopping_list_tombstone"))
+                        .where(field("shopping_list_id").eq(id))
+                        .execute();
                 DSL.using(configuration).deleteFrom(table("shopping_list_item"))
                         .where(field("shopping_list_id").eq(id))
                         .execute();
@@ -109,10 +235,12 @@ public class ShoppingListDAO {
                 if (count == 0) {
                     throw new ApplicationException("Cannot delete ShoppingList.");
                 }
+                return newRevision;
             });
         } catch (DataAccessException e) {
             throw new ApplicationException("Cannot delete ShoppingList.");
         }
+        notifyChange(id, revision, ShoppingListChange.DELETE, null);
         return shoppingList;
     }
 
@@ -162,153 +290,280 @@ public class ShoppingListDAO {
     }
 
     public List<User> invite(User authenticatedUser, User invitedUser, String shoppingListId) {
+        long revision;
         try {
-            dslContext.insertInto(table("shopping_list_authorization"))
-                    .columns(field("shopping_list_id"), field("user_id"), field("invitation_accepted"))
-                    .values(shoppingListId, invitedUser.getId(), false)
-                    .execute();
-
+            revision = dslContext.transactionResult(configuration -> {
+                DSLContext ctx = DSL.using(configuration);
+                Long newRevision = updateShoppingListRevision(ctx, shoppingListId);
+                if (newRevision == null) {
+                    throw new ApplicationException("Cannot invite user to ShoppingList.");
+                }
+                ctx.insertInto(table("shopping_list_authorization"))
+                        .columns(field("shopping_list_id"), field("user_id"), field("invitation_accepted"), field("revision"))
+                        .values(shoppingListId, invitedUser.getId(), false, newRevision)
+                        .execute();
+                return newRevision;
+            });
         } catch (DataAccessException e) {
             throw new ApplicationException("Cannot invite user to ShoppingList.");
         }
-            dslContext.update(table("shopping_list"))
-                .set(field("version"), UUID.randomUUID().toString())
-                .execute();
+        notifyChange(shoppingListId, revision, ShoppingListChange.INVITE, invitedUser.getId());
         return getInvitationsByShoppingList(authenticatedUser, shoppingListId);
     }
 
     public List<User> withdrawInvitation(User authenticatedUser, User user, String shoppingListId) {
+        long revision;
         try {
-            int count = dslContext.deleteFrom(table("shopping_list_authorization"))
-                    .where(field("shopping_list_id").eq(shoppingListId))
-                    .and(field("user_id").eq(user.getId()))
-                    .and(field("invitation_accepted").eq(false))
-                    .execute();
-            if (count == 0) {
-                throw new ApplicationException("Cannot withdraw invitation because it was not found.");
-            }
-            dslContext.update(table("shopping_list"))
-                    .set(field("version"), UUID.randomUUID().toString())
-                    .execute();
+            revision = dslContext.transactionResult(configuration -> {
+                DSLContext ctx = DSL.using(configuration);
+                Long newRevision = updateShoppingListRevision(ctx, shoppingListId);
+                int count = ctx.deleteFrom(table("shopping_list_authorization"))
+                        .where(field("shopping_list_id").eq(shoppingListId))
+                        .and(field("user_id").eq(user.getId()))
+                        .and(field("invitation_accepted").eq(false))
+                        .execute();
+                if (count == 0) {
+                    throw new ApplicationException("Cannot withdraw invitation because it was not found.");
+                }
+                addTombstone(ctx, shoppingListId, TOMBSTONE_USER, user.getId(), newRevision);
+                return newRevision;
+            });
         } catch (DataAccessException e) {
             throw new ApplicationException("Cannot withdraw invitation.");
         }
+        notifyChange(shoppingListId, revision, ShoppingListChange.WITHDRAW_INVITATION, user.getId());
         return getInvitationsByShoppingList(authenticatedUser, shoppingListId);
     }
 
     public void acceptInvitation(User user, String shoppingListId) {
+        long revision;
         try {
-            int count = dslContext.update(table("shopping_list_authorization"))
-                    .set(field("invitation_accepted"), true)
-                    .where(field("shopping_list_id").eq(shoppingListId))
-                    .and(field("user_id").eq(user.getId()))
-                    .execute();
-            if (count == 0) {
-                throw new ApplicationException("Invitation not found.");
-            }
-            dslContext.update(table("shopping_list"))
-                    .set(field("version"), UUID.randomUUID().toString())
-                    .execute();
+            revision = dslContext.transactionResult(configuration -> {
+                DSLContext ctx = DSL.using(configuration);
+                Long newRevision = updateShoppingListRevision(ctx, shoppingListId);
+                int count = ctx.update(table("shopping_list_authorization"))
+                        .set(field("invitation_accepted"), true)
+                        .set(field("revision"), newRevision)
+                        .where(field("shopping_list_id").eq(shoppingListId))
+                        .and(field("user_id").eq(user.getId()))
+                        .execute();
+                if (count == 0) {
+                    throw new ApplicationException("Invitation not found.");
+                }
+                return newRevision;
+            });
         } catch (DataAccessException e) {
             throw new ApplicationException("Cannot accept invitation.");
         }
+        notifyChange(shoppingListId, revision, ShoppingListChange.ACCEPT_INVITATION, user.getId());
     }
 
     public void rejectInvitation(User user, String shoppingListId) {
+        long revision;
         try {
-            int count = dslContext.delete(table("shopping_list_authorization"))
-                    .where(field("shopping_list_id").eq(shoppingListId))
-                    .and(field("user_id").eq(user.getId()))
-                    .and(field("invitation_accepted").eq(false))
-                    .execute();
-            if (count == 0) {
-                throw new ApplicationException("Cannot reject invitation.");
-            }
-            dslContext.update(table("shopping_list"))
-                    .set(field("version"), UUID.randomUUID().toString())
-                    .execute();
+            revision = dslContext.transactionResult(configuration -> {
+                DSLContext ctx = DSL.using(configuration);
+                Long newRevision = updateShoppingListRevision(ctx, shoppingListId);
+                int count = ctx.delete(table("shopping_list_authorization"))
+                        .where(field("shopping_list_id").eq(shoppingListId))
+                        .and(field("user_id").eq(user.getId()))
+                        .and(field("invitation_accepted").eq(false))
+                        .execute();
+                if (count == 0) {
+                    throw new ApplicationException("Cannot reject invitation.");
+                }
+                addTombstone(ctx, shoppingListId, TOMBSTONE_USER, user.getId(), newRevision);
+                return newRevision;
+            });
         } catch (DataAccessException e) {
             throw new ApplicationException("Cannot reject invitation.");
         }
+        notifyChange(shoppingListId, revision, ShoppingListChange.REJECT_INVITATION, user.getId());
     }
 
     public List<User> leaveShoppingList(User authenticatedUser, User userToLeave, String shoppingListId) {
+        long revision;
         try {
-            int count = 0;
-            if (authenticatedUser.getId().equals(userToLeave.getId())) {
-                count = dslContext.delete(table("shopping_list_authorization"))
-                        .where(field("shopping_list_id").eq(shoppingListId))
-                        .and(field("user_id").eq(userToLeave.getId()))
-                        .and(field("invitation_accepted").eq(true))
-                        .and(field("user_id").notIn(
-                                        dslContext.select(field("owner"))
-                                                .from("shopping_list")
-                                                .where(field("id").eq(shoppingListId))
-                                )
-                        )
-                        .execute();
+            revision = dslContext.transactionResult(configuration -> {
+                DSLContext ctx = DSL.using(configuration);
+                Long newRevision = updateShoppingListRevision(ctx, shoppingListId);
+                int count = 0;
+                if (authenticatedUser.getId().equals(userToLeave.getId())) {
+                    count = ctx.delete(table("shopping_list_authorization"))
+                            .where(field("shopping_list_id").eq(shoppingListId))
+                            .and(field("user_id").eq(userToLeave.getId()))
+                            .and(field("invitation_accepted").eq(true))
+                            .and(field("user_id").notIn(
+                                            ctx.select(field("owner"))
+                                                    .from("shopping_list")
+                                                    .where(field("id").eq(shoppingListId))
+                                    )
+                            )
+                            .execute();
+                } else {
+                    count = ctx.delete(table("shopping_list_authorization"))
+                            .where(field("shopping_list_id").eq(shoppingListId))
+                            .and(field("user_id").eq(userToLeave.getId()))
+                            .and(field("invitation_accepted").eq(true))
+                            .and(field("user_id").notIn(
+                                            ctx.select(field("owner"))
+                                                    .from("shopping_list")
+                                                    .where(field("id").eq(shoppingListId))
+                                    )
+                            )
+                            .and(field("shopping_list_id").in(
+                                            ctx.select(field("id"))
+                                                    .from("shopping_List")
+                                                    .where(field("owner").eq(authenticatedUser.getId()))
+                                    )
+                            )
+                            .execute();
+                }
                 if (count == 0) {
                     throw new ApplicationException("Cannot leave ShoppingList.");
                 }
-                dslContext.update(table("shopping_list"))
-                        .set(field("version"), UUID.randomUUID().toString())
-                        .execute();
-            } else {
-                count = dslContext.delete(table("shopping_list_authorization"))
-                        .where(field("shopping_list_id").eq(shoppingListId))
-                        .and(field("user_id").eq(userToLeave.getId()))
-                        .and(field("invitation_accepted").eq(true))
-                        .and(field("user_id").notIn(
-                                        dslContext.select(field("owner"))
-                                                .from("shopping_list")
-                                                .where(field("id").eq(shoppingListId))
-                                )
-                        )
-                        .and(field("shopping_list_id").in(
-                                        dslContext.select(field("id"))
-                                                .from("shopping_List")
-                                                .where(field("owner").eq(authenticatedUser.getId()))
-                                )
-                        )
-                        .execute();
-            }
-            if (count == 0) {
-                throw new ApplicationException("Cannot leave ShoppingList.");
-            }
-            dslContext.update(table("shopping_list"))
-                    .set(field("version"), UUID.randomUUID().toString())
-                    .execute();
+                addTombstone(ctx, shoppingListId, TOMBSTONE_USER, userToLeave.getId(), newRevision);
+                return newRevision;
+            });
         } catch (DataAccessException e){
                 throw new ApplicationException("Cannot leave ShoppingList.");
         }
+        notifyChange(shoppingListId, revision, ShoppingListChange.LEAVE, userToLeave.getId());
         return getMembers(shoppingListId);
     }
 
+    // The membership check reads the current version of the list, so a cached list is only used while it is up to date.
     public EnrichedShoppingList getEnrichedShoppingList(User authenticatedUser, String shoppingListId) {
-        ShoppingList shoppingList = getShoppingList(authenticatedUser, shoppingListId);
-        List<User> members = dslContext.select()
-                .from("shopping_list_authorization")
-                .join("user_account")
-                .on(field("shopping_list_authorization.user_id").eq(field("user_account.id")))
-                .where(field("shopping_list_id").eq(shoppingListId))
-                .and(field("invitation_accepted").eq(true))
-                .fetch(new UserDAO.UserMapper())
-                .stream().map(userFromDb -> new User(userFromDb.getId(), userFromDb.getVersion(), userFromDb.getName(), null))
-                .collect(Collectors.toList());
-        List<User> invitedUsers = dslContext.select()
+        String version = getShoppingListVersion(authenticatedUser, shoppingListId);
+        if (version == null) {
+            throw new ApplicationException("ShoppingList not found.");
+        }
+        return getEnrichedShoppingList(authenticatedUser, shoppingListId, version);
+    }
+
+    // For callers that have just read the version with getShoppingListVersion, which is also the membership check.
+    public EnrichedShoppingList getEnrichedShoppingList(User authenticatedUser, String shoppingListId, String version) {
+        EnrichedShoppingList cachedShoppingList = enrichedShoppingListCache.getIfPresent(shoppingListId);
+        if (cachedShoppingList != null && cachedShoppingList.getVersion().equals(version)) {
+            return copy(cachedShoppingList);
+        }
+        String loadKey = shoppingListId + ":" + version;
+        CompletableFuture<EnrichedShoppingList> load = new CompletableFuture<>();
+        CompletableFuture<EnrichedShoppingList> inFlightLoad = inFlightLoads.putIfAbsent(loadKey, load);
+        if (inFlightLoad != null) {
+            try {
+                return copy(inFlightLoad.join());
+            } catch (CompletionException e) {
+                // The load failed for the user who started it. This user passed the membership check, so try again.
+                return copy(loadEnrichedShoppingList(authenticatedUser, shoppingListId));
+            }
+        }
+        try {
+            EnrichedShoppingList enrichedShoppingList = loadEnrichedShoppingList(authenticatedUser, shoppingListId);
+            if (enrichedShoppingListCacheEnabled) {
+                enrichedShoppingListCache.put(shoppingListId, enrichedShoppingList);
+            }
+            load.complete(enrichedShoppingList);
+            return copy(enrichedShoppingList);
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(loadKey, load);
+        }
+    }
+
+    // Rebalances that failed in the background. The list keeps working, but its sort order gaps stay used up.
+    public long getFailedRebalances() {
+        return failedRebalances.sum();
+    }
+
+    public CacheStats getEnrichedShoppingListCacheStats() {
+        return enrichedShoppingListCache.stats();
+    }
+
+    // The estimated memory footprint of the cached lists in bytes.
+    public long getEnrichedShoppingListCacheBytes() {
+        enrichedShoppingListCache.cleanUp();
+        return enrichedShoppingListCache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    private EnrichedShoppingList loadEnrichedShoppingList(User authenticatedUser, String shoppingListId) {
+        // The list, its members and invited users and its items are read with one UNION ALL statement.
+        // Every row carries a kind discriminator; columns that do not apply to a kind are null.
+        Select<Record> shoppingListRow = dslContext.select(Arrays.asList(
+                        inline(KIND_SHOPPING_LIST).as("kind"),
+                        field("shopping_list.id").as("id"),
+                        field("shopping_list.version").as("version"),
+                        field("shopping_list.name").as("name"),
+                        field("shopping_list.owner").as("owner"),
+                        castNull(String.class).as("created_by"),
+                        castNull(String.class).as("modified_by"),
+                        castNull(String.class).as("bought_by"),
+                        castNull(String.class).as("state_changed_by"),
+                        castNull(Long.class).as("sort_order")))
+                .from("shopping_list")
+                .join("shopping_list_authorization")
+                .on(field("shopping_list.id").eq(field("shopping_list_authorization.shopping_list_id")))
+                .where(field("shopping_list.id").eq(shoppingListId))
+                .and(field("shopping_list_authorization.user_id").eq(authenticatedUser.getId()))
+                .and(field("shopping_list_authorization.invitation_accepted").eq(true));
+        Select<Record> userRows = dslContext.select(Arrays.asList(
+                        when(field("shopping_list_authorization.invitation_accepted").eq(true), inline(KIND_MEMBER))
+                                .otherwise(inline(KIND_INVITED_USER)),
+                        field("user_account.id"),
+                        field("user_account.version"),
+                        field("user_account.name"),
+                        castNull(String.class),
+                        castNull(String.class),
+                        castNull(String.class),
+                        castNull(String.class),
+                        castNull(String.class),
+                        castNull(Long.class)))
                 .from("shopping_list_authorization")
                 .join("user_account")
                 .on(field("shopping_list_authorization.user_id").eq(field("user_account.id")))
-                .where(field("shopping_list_id").eq(shoppingListId))
-                .and(field("invitation_accepted").eq(false))
-                .fetch(new UserDAO.UserMapper())
-                .stream().map(userFromDb -> new User(userFromDb.getId(), userFromDb.getVersion(), userFromDb.getName(), null))
-                .collect(Collectors.toList());
-        List<ShoppingListItem> items = dslContext.select()
+                .where(field("shopping_list_authorization.shopping_list_id").eq(shoppingListId));
+        Select<Record> itemRows = dslContext.select(Arrays.asList(
+                        inline(KIND_ITEM),
+                        field("id"),
+                        field("version"),
+                        field("name"),
+                        castNull(String.class),
+                        field("created_by"),
+                        field("modified_by"),
+                        field("bought_by"),
+                        field("state_changed_by"),
+                        field("sort_order")))
                 .from("shopping_list_item")
-                .where(field("shopping_list_id").eq(shoppingListId))
-                .orderBy(field("sort_order"))
-                .fetch(new ShoppingListItemMapper());
+                .where(field("shopping_list_id").eq(shoppingListId));
+        Result<Record> records = dslContext.select().from(
+                        shoppingListRow.unionAll(userRows).unionAll(itemRows).asTable("enriched_shopping_list"))
+                .orderBy(field("kind"), field("sort_order"))
+                .fetch();
+
+        ShoppingList shoppingList = null;
+        List<User> members = new ArrayList<>();
+        List<User> invitedUsers = new ArrayList<>();
+        List<ShoppingListItem> items = new ArrayList<>();
+        ShoppingListItemMapper itemMapper = new ShoppingListItemMapper();
+        for (Record record : records) {
+            String kind = record.getValue("kind", String.class);
+            if (KIND_SHOPPING_LIST.equals(kind)) {
+                shoppingList = new ShoppingListMapper().map(record);
+            } else if (KIND_MEMBER.equals(kind)) {
+                members.add(mapUser(record));
+            } else if (KIND_INVITED_USER.equals(kind)) {
+                invitedUsers.add(mapUser(record));
+            } else {
+                items.add(itemMapper.map(record));
+            }
+        }
+        if (shoppingList == null) {
+            throw new ApplicationException("ShoppingList not found.");
+        }
         return new EnrichedShoppingList(
                 shoppingList.getId(),
                 shoppingList.getVersion(),
@@ -320,76 +575,267 @@ public class ShoppingListDAO {
         );
     }
 
-    public EnrichedShoppingList addShoppingListItem(User authenticatedUser, String shoppingListId, ShoppingListItem shoppingListItem) {
-        getShoppingList(authenticatedUser, shoppingListId);
-        String newId = UUID.randomUUID().toString();
-        String newVersion = UUID.randomUUID().toString();
-        int count = dslContext.update(table("shopping_list"))
-                .set(field("version"), UUID.randomUUID())
-                .execute();
-        if (count == 0) {
-            throw new ApplicationException("ShoppingList not found.");
+    private static EnrichedShoppingList copy(EnrichedShoppingList enrichedShoppingList) {
+        return new EnrichedShoppingList(
+                enrichedShoppingList.getId(),
+                enrichedShoppingList.getVersion(),
+                enrichedShoppingList.getName(),
+                enrichedShoppingList.getOwner(),
+                enrichedShoppingList.getMembers().stream().map(ShoppingListDAO::copy).collect(Collectors.toList()),
+                enrichedShoppingList.getInvitedUsers().stream().map(ShoppingListDAO::copy).collect(Collectors.toList()),
+                enrichedShoppingList.getItems().stream().map(ShoppingListDAO::copy).collect(Collectors.toList())
+        );
+    }
+
+    private static User copy(User user) {
+        return new User(user.getId(), user.getVersion(), user.getName(), null);
+    }
+
+    private static ShoppingListItem copy(ShoppingListItem item) {
+        return new ShoppingListItem(
+                item.getId(),
+                item.getVersion(),
+                item.getName(),
+                item.getCreatedBy(),
+                item.getModifiedBy(),
+                item.getBoughtBy(),
+                item.getStateChangedBy()
+        );
+    }
+
+    // A rough estimate of the heap used by a list: object headers and references plus two bytes per character.
+    static int estimateSize(EnrichedShoppingList enrichedShoppingList) {
+        long size = 64 + estimateSize(enrichedShoppingList.getId()) + estimateSize(enrichedShoppingList.getVersion())
+                + estimateSize(enrichedShoppingList.getName()) + estimateSize(enrichedShoppingList.getOwner());
+        for (User user : enrichedShoppingList.getMembers()) {
+            size += 48 + estimateSize(user.getId()) + estimateSize(user.getVersion()) + estimateSize(user.getName());
         }
-        if (!ShoppingListItem.isNameValid(shoppingListItem.getName())) {
-            throw new ApplicationException("Invalid name.");
+        for (User user : enrichedShoppingList.getInvitedUsers()) {
+            size += 48 + estimateSize(user.getId()) + estimateSize(user.getVersion()) + estimateSize(user.getName());
         }
-        dslContext.insertInto(table("shopping_list_item"))
-                .columns(
-                        field("id"),
-                        field("version"),
-                        field("name"),
-                        field("created_by"),
-                        field("modified_by"),
-                        field("bought_by"),
-                        field("state_changed_by"),
-                        field("shopping_list_id"),
-                        field("sort_order"))
-                .values(
-                        newId,
-                        newVersion,
-                        shoppingListItem.getName(),
-                        authenticatedUser.getId(),
-                        authenticatedUser.getId(),
-                        null,
-                        authenticatedUser.getId(),
-                        shoppingListId,
-                        dslContext.selectCount()
-                                .from("shopping_list_item")
-                                .where(field("shopping_list_id").eq(shoppingListId))
-                                .fetchOne(0, Integer.class)
-                )
-                .execute();
-        return getEnrichedShoppingList(authenticatedUser, shoppingListId);
+        for (ShoppingListItem item : enrichedShoppingList.getItems()) {
+            size += 64 + estimateSize(item.getId()) + estimateSize(item.getVersion()) + estimateSize(item.getName())
+                    + estimateSize(item.getCreatedBy()) + estimateSize(item.getModifiedBy())
+                    + estimateSize(item.getBoughtBy()) + estimateSize(item.getStateChangedBy());
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
     }
 
-    public EnrichedShoppingList removeShoppingListItem(User authenticatedUser, String shoppingListId, ShoppingListItem item) {
-        getShoppingList(authenticatedUser, shoppingListId);
-        int count = dslContext.update(table("shopping_list"))
-                .set(field("version"), UUID.randomUUID())
-                .execute();
-        if (count == 0) {
+    private static long estimateSize(String value) {
+        return value == null ? 0 : 48 + 2L * value.length();
+    }
+
+    private static User mapUser(Record record) {
+        return new User(
+                record.getValue("id", String.class),
+                record.getValue("version", String.class),
+                record.getValue("name", String.class),
+                null);
+    }
+
+    public ShoppingListDelta getShoppingListDelta(User authenticatedUser, String shoppingListId, long sinceRevision) {
+        // The list revision is read first. Every mutation with a revision up to it has committed at that point,
+        // so reading the changed rows afterwards cannot miss one of them.
+        Record shoppingList = dslContext.select(field("id"), field("version"), field("name"), field("owner"),
+                        field("shopping_list.revision").as("revision"), field("pruned_revision"))
+                .from("shopping_list")
+                .join("shopping_list_authorization")
+                .on(field("id").eq(field("shopping_list_id")))
+                .where(field("id").eq(shoppingListId))
+                .and(field("user_id").eq(authenticatedUser.getId()))
+                .and(field("invitation_accepted").eq(true))
+                .fetchOne();
+        if (shoppingList == null) {
             throw new ApplicationException("ShoppingList not found.");
         }
-        count = dslContext.deleteFrom(table("shopping_list_item"))
+        // The tombstones the client would need are gone, so it gets everything and has to replace what it has.
+        boolean fullSync = sinceRevision < shoppingList.getValue("pruned_revision", Long.class);
+        if (fullSync) {
+            sinceRevision = -1;
+        }
+        List<User> members = new ArrayList<>();
+        List<User> invitedUsers = new ArrayList<>();
+        dslContext.select(field("user_account.id").as("id"), field("user_account.version").as("version"),
+                        field("user_account.name").as("name"),
+                        field("shopping_list_authorization.invitation_accepted").as("invitation_accepted"))
+                .from("shopping_list_authorization")
+                .join("user_account")
+                .on(field("shopping_list_authorization.user_id").eq(field("user_account.id")))
+                .where(field("shopping_list_authorization.shopping_list_id").eq(shoppingListId))
+                .and(field("shopping_list_authorization.revision", Long.class).gt(sinceRevision))
+                .fetch()
+                .forEach(record -> {
+                    if (record.getValue("invitation_accepted", Boolean.class)) {
+                        members.add(mapUser(record));
+                    } else {
+                        invitedUsers.add(mapUser(record));
+                    }
+                });
+        List<ShoppingListItem> items = new ArrayList<>();
+        Map<String, Long> sortOrders = new HashMap<>();
+        ShoppingListItemMapper itemMapper = new ShoppingListItemMapper();
+        dslContext.select()
+                .from("shopping_list_item")
                 .where(field("shopping_list_id").eq(shoppingListId))
-                .and(field("id").eq(item.getId()))
-                .and(field("version").eq(item.getVersion()))
-                .execute();
-        if (count == 0) {
-            throw new ApplicationException("Cannot remove ShoppingListItem.");
+                .and(field("revision", Long.class).gt(sinceRevision))
+                .orderBy(field("sort_order"))
+                .fetch()
+                .forEach(record -> {
+                    ShoppingListItem item = itemMapper.map(record);
+                    items.add(item);
+                    sortOrders.put(item.getId(), record.getValue("sort_order", Long.class));
+                });
+        Set<String> changedUserIds = new HashSet<>();
+        members.forEach(user -> changedUserIds.add(user.getId()));
+        invitedUsers.forEach(user -> changedUserIds.add(user.getId()));
+        Set<String> removedUserIds = new LinkedHashSet<>();
+        Set<String> removedItemIds = new LinkedHashSet<>();
+        if (!fullSync) {
+            dslContext.select(field("kind"), field("entity_id"))
+                    .from("shopping_list_tombstone")
+                    .where(field("shopping_list_id").eq(shoppingListId))
+                    .and(field("revision", Long.class).gt(sinceRevision))
+                    .orderBy(field("revision"))
+                    .fetch()
+                    .forEach(record -> {
+                        String entityId = record.getValue("entity_id", String.class);
+                        if (TOMBSTONE_ITEM.equals(record.getValue("kind", String.class))) {
+                            removedItemIds.add(entityId);
+                        } else if (!changedUserIds.contains(entityId)) {
+                            removedUserIds.add(entityId);
+                        }
+                    });
         }
+        return new ShoppingListDelta(
+                shoppingList.getValue("id", String.class),
+                shoppingList.getValue("version", String.class),
+                shoppingList.getValue("name", String.class),
+                shoppingList.getValue("owner", String.class),
+                shoppingList.getValue("revision", Long.class),
+                fullSync,
+                members,
+                invitedUsers,
+                items,
+                sortOrders,
+                new ArrayList<>(removedUserIds),
+                new ArrayList<>(removedItemIds)
+        );
+    }
+
+    public EnrichedShoppingList addShoppingListItem(User authenticatedUser, String shoppingListId, ShoppingListItem shoppingListItem) {
+        addShoppingListItemMinimal(authenticatedUser, shoppingListId, shoppingListItem, null);
+        return getEnrichedShoppingList(authenticatedUser, shoppingListId);
+    }
+
+    public EnrichedShoppingList removeShoppingListItem(User authenticatedUser, String shoppingListId, ShoppingListItem item) {
+        removeShoppingListItemMinimal(authenticatedUser, shoppingListId, item, null);
         return getEnrichedShoppingList(authenticatedUser, shoppingListId);
     }
 
     public EnrichedShoppingList setBought(User authenticatedUser, String shoppingListId, ShoppingListItem shoppingListItem) {
+        setBoughtMinimal(authenticatedUser, shoppingListId, shoppingListItem, null);
+        return getEnrichedShoppingList(authenticatedUser, shoppingListId);
+    }
+
+    public EnrichedShoppingList setUnbought(User authenticatedUser, String shoppingListId, ShoppingListItem shoppingListItem) {
+        setUnboughtMinimal(authenticatedUser, shoppingListId, shoppingListItem, null);
+        return getEnrichedShoppingList(authenticatedUser, shoppingListId);
+    }
+
+    // The *Minimal variants of the item mutations return only the affected item and the new version of the list, so they
+    // do not read the list again. If the client passes the version it knows, the result says whether anybody else
+    // changed the list since then.
+    public ShoppingListItemResult addShoppingListItemMinimal(User authenticatedUser, String shoppingListId, ShoppingListItem shoppingListItem, String knownVersion) {
         getShoppingList(authenticatedUser, shoppingListId);
-        dslContext.transaction(configuration -> {
-            DSL.using(configuration).update(table("shopping_list"))
-                    .set(field("version"), UUID.randomUUID().toString())
-                    .where(field("id").eq(shoppingListId))
+        if (!ShoppingListItem.isNameValid(shoppingListItem.getName())) {
+            throw new ApplicationException("Invalid name.");
+        }
+        ShoppingListItem newItem = new ShoppingListItem(
+                UUID.randomUUID().toString(),
+                UUID.randomUUID().toString(),
+                shoppingListItem.getName(),
+                authenticatedUser.getId(),
+                authenticatedUser.getId(),
+                null,
+                authenticatedUser.getId());
+        ShoppingListItemResult result = dslContext.transactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            Boolean othersChanged = othersChanged(ctx, shoppingListId, knownVersion);
+            String newVersion = UUID.randomUUID().toString();
+            Long newRevision = updateShoppingListRevision(ctx, shoppingListId, newVersion);
+            if (newRevision == null) {
+                throw new ApplicationException("ShoppingList not found.");
+            }
+            long sortOrder = takeNextSortOrder(ctx, shoppingListId);
+            ctx.insertInto(table("shopping_list_item"))
+                    .columns(
+                            field("id"),
+                            field("version"),
+                            field("name"),
+                            field("created_by"),
+                            field("modified_by"),
+                            field("bought_by"),
+                            field("state_changed_by"),
+                            field("shopping_list_id"),
+                            field("sort_order"),
+                            field("revision"))
+                    .values(
+                            newItem.getId(),
+                            newItem.getVersion(),
+                            newItem.getName(),
+                            newItem.getCreatedBy(),
+                            newItem.getModifiedBy(),
+                            newItem.getBoughtBy(),
+                            newItem.getStateChangedBy(),
+                            shoppingListId,
+                            sortOrder,
+                            newRevision
+                    )
+                    .execute();
+            return new ShoppingListItemResult(newItem, newVersion, newRevision, othersChanged);
+        });
+        notifyChange(shoppingListId, result.getRevision(), ShoppingListChange.ADD_ITEM, newItem.getId());
+        return result;
+    }
+
+    public ShoppingListItemResult removeShoppingListItemMinimal(User authenticatedUser, String shoppingListId, ShoppingListItem item, String knownVersion) {
+        getShoppingList(authenticatedUser, shoppingListId);
+        ShoppingListItemResult result = dslContext.transactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            Boolean othersChanged = othersChanged(ctx, shoppingListId, knownVersion);
+            String newVersion = UUID.randomUUID().toString();
+            Long newRevision = updateShoppingListRevision(ctx, shoppingListId, newVersion);
+            if (newRevision == null) {
+                throw new ApplicationException("ShoppingList not found.");
+            }
+            int count = ctx.deleteFrom(table("shopping_list_item"))
+                    .where(field("shopping_list_id").eq(shoppingListId))
+                    .and(field("id").eq(item.getId()))
+                    .and(field("version").eq(item.getVersion()))
                     .execute();
-            int count = DSL.using(configuration).update(table("shopping_list_item"))
+            if (count == 0) {
+                throw new ApplicationException("Cannot remove ShoppingListItem.");
+            }
+            addTombstone(ctx, shoppingListId, TOMBSTONE_ITEM, item.getId(), newRevision);
+            return new ShoppingListItemResult(item, newVersion, newRevision, othersChanged);
+        });
+        notifyChange(shoppingListId, result.getRevision(), ShoppingListChange.REMOVE_ITEM, item.getId());
+        return result;
+    }
+
+    public ShoppingListItemResult setBoughtMinimal(User authenticatedUser, String shoppingListId, ShoppingListItem shoppingListItem, String knownVersion) {
+        getShoppingList(authenticatedUser, shoppingListId);
+        ShoppingListItemResult result = dslContext.transactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            Boolean othersChanged = othersChanged(ctx, shoppingListId, knownVersion);
+            String newVersion = UUID.randomUUID().toString();
+            Long newRevision = updateShoppingListRevision(ctx, shoppingListId, newVersion);
+            if (newRevision == null) {
+                throw new ApplicationException("ShoppingList not found.");
+            }
+            int count = ctx.update(table("shopping_list_item"))
                     .set(field("bought_by"), authenticatedUser.getId())
+                    .set(field("revision"), newRevision)
                     .set(field("state_changed_by"), authenticatedUser.getId())
                     .where(field("shopping_list_id").eq(shoppingListId))
                     .and(field("id").eq(shoppingListItem.getId()))
@@ -398,19 +844,25 @@ public class ShoppingListDAO {
             if (count == 0) {
                 throw new ApplicationException("Cannot set ShoppingListItem to state bought.");
             }
+            return new ShoppingListItemResult(getShoppingListItem(ctx, shoppingListItem.getId()), newVersion, newRevision, othersChanged);
         });
-        return getEnrichedShoppingList(authenticatedUser, shoppingListId);
+        notifyChange(shoppingListId, result.getRevision(), ShoppingListChange.SET_BOUGHT, shoppingListItem.getId());
+        return result;
     }
 
-    public EnrichedShoppingList setUnbought(User authenticatedUser, String shoppingListId, ShoppingListItem shoppingListItem) {
+    public ShoppingListItemResult setUnboughtMinimal(User authenticatedUser, String shoppingListId, ShoppingListItem shoppingListItem, String knownVersion) {
         getShoppingList(authenticatedUser, shoppingListId);
-        dslContext.transaction(configuration -> {
-            DSL.using(configuration).update(table("shopping_list"))
-                    .set(field("version"), UUID.randomUUID().toString())
-                    .where(field("id").eq(shoppingListId))
-                    .execute();
-            int count = DSL.using(configuration).update(table("shopping_list_item"))
+        ShoppingListItemResult result = dslContext.transactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            Boolean othersChanged = othersChanged(ctx, shoppingListId, knownVersion);
+            String newVersion = UUID.randomUUID().toString();
+            Long newRevision = updateShoppingListRevision(ctx, shoppingListId, newVersion);
+            if (newRevision == null) {
+                throw new ApplicationException("ShoppingList not found.");
+            }
+            int count = ctx.update(table("shopping_list_item"))
                     .setNull(field("bought_by"))
+                    .set(field("revision"), newRevision)
                     .set(field("state_changed_by"), authenticatedUser.getId())
                     .where(field("shopping_list_id").eq(shoppingListId))
                     .and(field("id").eq(shoppingListItem.getId()))
@@ -419,10 +871,410 @@ public class ShoppingListDAO {
             if (count == 0) {
                 throw new ApplicationException("Cannot set ShoppingListItem to state unbought.");
             }
+            return new ShoppingListItemResult(getShoppingListItem(ctx, shoppingListItem.getId()), newVersion, newRevision, othersChanged);
+        });
+        notifyChange(shoppingListId, result.getRevision(), ShoppingListChange.SET_UNBOUGHT, shoppingListItem.getId());
+        return result;
+    }
+
+    // Locks the list row and compares its current version with the one the client knows. Returns null if the client
+    // did not pass a version, without locking.
+    private static Boolean othersChanged(DSLContext ctx, String shoppingListId, String knownVersion) {
+        if (knownVersion == null) {
+            return null;
+        }
+        String version = ctx.select(field("version"))
+                .from("shopping_list")
+                .where(field("id").eq(shoppingListId))
+                .forUpdate()
+                .fetchOne(0, String.class);
+        return version != null && !version.equals(knownVersion);
+    }
+
+    private static ShoppingListItem getShoppingListItem(DSLContext ctx, String itemId) {
+        return ctx.select()
+                .from("shopping_list_item")
+                .where(field("id").eq(itemId))
+                .fetchOne(new ShoppingListItemMapper());
+    }
+
+    // Applies all operations in one transaction that gives the list a single new version and revision. The statements
+    // are sent as one JDBC batch. If any operation cannot be applied, none of them is.
+    public EnrichedShoppingList applyShoppingListItemOperations(User authenticatedUser, String shoppingListId, List<ShoppingListItemOperation> operations) {
+        if (operations == null || operations.isEmpty() || operations.size() > MAX_ITEM_OPERATIONS) {
+            throw new ApplicationException("Invalid number of operations.");
+        }
+        int numberOfAdds = 0;
+        for (ShoppingListItemOperation operation : operations) {
+            if (operation.getItem() == null) {
+                throw new ApplicationException("Invalid operation.");
+            }
+            if (ShoppingListItemOperation.ADD.equals(operation.getOperation())) {
+                if (!ShoppingListItem.isNameValid(operation.getItem().getName())) {
+                    throw new ApplicationException("Invalid name.");
+                }
+                numberOfAdds++;
+            } else if (!ShoppingListItemOperation.REMOVE.equals(operation.getOperation())
+                    && !ShoppingListItemOperation.SET_BOUGHT.equals(operation.getOperation())
+                    && !ShoppingListItemOperation.SET_UNBOUGHT.equals(operation.getOperation())) {
+                throw new ApplicationException("Invalid operation.");
+            }
+        }
+        getShoppingList(authenticatedUser, shoppingListId);
+        int sortOrderCount = numberOfAdds;
+        long revision = dslContext.transactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            Long newRevision = updateShoppingListRevision(ctx, shoppingListId);
+            if (newRevision == null) {
+                throw new ApplicationException("ShoppingList not found.");
+            }
+            long sortOrder = sortOrderCount > 0 ? takeNextSortOrders(ctx, shoppingListId, sortOrderCount) : 0;
+            List<Query> queries = new ArrayList<>();
+            // The position of each operation's checked statement in the batch, and the error if it updates no row.
+            Map<Integer, String> errorsByQuery = new HashMap<>();
+            for (ShoppingListItemOperation operation : operations) {
+                ShoppingListItem item = operation.getItem();
+                switch (operation.getOperation()) {
+                    case ShoppingListItemOperation.ADD:
+                        queries.add(ctx.insertInto(table("shopping_list_item"))
+                                .columns(field("id"), field("version"), field("name"), field("created_by"), field("modified_by"),
+                                        field("bought_by"), field("state_changed_by"), field("shopping_list_id"), field("sort_order"), field("revision"))
+                                .values(UUID.randomUUID().toString(), UUID.randomUUID().toString(), item.getName(), authenticatedUser.getId(),
+                                        authenticatedUser.getId(), null, authenticatedUser.getId(), shoppingListId, sortOrder, newRevision));
+                        sortOrder += SORT_ORDER_GAP;
+                        break;
+                    case ShoppingListItemOperation.REMOVE:
+                        errorsByQuery.put(queries.size(), "Cannot remove ShoppingListItem.");
+                        queries.add(ctx.deleteFrom(table("shopping_list_item"))
+                                .where(field("shopping_list_id").eq(shoppingListId))
+                                .and(field("id").eq(item.getId()))
+                                .and(field("version").eq(item.getVersion())));
+                        queries.add(insertTombstone(ctx, shoppingListId, TOMBSTONE_ITEM, item.getId(), newRevision));
+                        break;
+                    case ShoppingListItemOperation.SET_BOUGHT:
+                        errorsByQuery.put(queries.size(), "Cannot set ShoppingListItem to state bought.");
+                        queries.add(ctx.update(table("shopping_list_item"))
+                                .set(field("bought_by"), authenticatedUser.getId())
+                                .set(field("revision"), newRevision)
+                                .set(field("state_changed_by"), authenticatedUser.getId())
+                                .where(field("shopping_list_id").eq(shoppingListId))
+                                .and(field("id").eq(item.getId()))
+                                .and(field("bought_by").isNull()));
+                        break;
+                    default:
+                        errorsByQuery.put(queries.size(), "Cannot set ShoppingListItem to state unbought.");
+                        queries.add(ctx.update(table("shopping_list_item"))
+                                .setNull(field("bought_by"))
+                                .set(field("revision"), newRevision)
+                                .set(field("state_changed_by"), authenticatedUser.getId())
+                                .where(field("shopping_list_id").eq(shoppingListId))
+                                .and(field("id").eq(item.getId()))
+                                .and(field("bought_by").isNotNull()));
+                        break;
+                }
+            }
+            int[] counts = ctx.batch(queries).execute();
+            for (Map.Entry<Integer, String> error : errorsByQuery.entrySet()) {
+                if (counts[error.getKey()] == 0) {
+                    throw new ApplicationException(error.getValue());
+                }
+            }
+            pruneTombstones(ctx, shoppingListId);
+            return newRevision;
+        });
+        notifyChange(shoppingListId, revision, ShoppingListChange.UPDATE_ITEMS, null);
+        return getEnrichedShoppingList(authenticatedUser, shoppingListId);
+    }
+
+    // Moves the item directly behind the item with the id afterItemId, or to the top of the list if afterItemId is null.
+    // Only the moved item is updated, unless there is no room left between its new neighbours.
+    public EnrichedShoppingList moveShoppingListItem(User authenticatedUser, String shoppingListId, String itemId, String afterItemId) {
+        getShoppingList(authenticatedUser, shoppingListId);
+        if (itemId.equals(afterItemId)) {
+            throw new ApplicationException("Cannot move ShoppingListItem.");
+        }
+        AtomicBoolean rebalance = new AtomicBoolean(false);
+        long revision = dslContext.transactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            Long newRevision = updateShoppingListRevision(ctx, shoppingListId);
+            if (newRevision == null) {
+                throw new ApplicationException("ShoppingList not found.");
+            }
+            if (getSortOrder(ctx, shoppingListId, itemId) == null) {
+                throw new ApplicationException("Cannot move ShoppingListItem.");
+            }
+            Long lower = null;
+            Long upper = null;
+            for (int attempt = 0; attempt < 2; attempt++) {
+                if (afterItemId != null) {
+                    lower = getSortOrder(ctx, shoppingListId, afterItemId);
+                    if (lower == null) {
+                        throw new ApplicationException("Cannot move ShoppingListItem.");
+                    }
+                }
+                upper = ctx.select(min(field("sort_order", Long.class)))
+                        .from("shopping_list_item")
+                        .where(field("shopping_list_id").eq(shoppingListId))
+                        .and(field("id").ne(itemId))
+                        .and(lower == null ? DSL.noCondition() : field("sort_order", Long.class).gt(lower))
+                        .fetchOne(0, Long.class);
+                if (lower == null || upper == null || upper - lower > 1) {
+                    break;
+                }
+                renumberItems(ctx, shoppingListId, newRevision);
+            }
+            long sortOrder;
+            if (upper == null) {
+                sortOrder = takeNextSortOrder(ctx, shoppingListId);
+            } else if (lower == null) {
+                sortOrder = upper - SORT_ORDER_GAP;
+            } else {
+                sortOrder = lower + (upper - lower) / 2;
+                rebalance.set(sortOrder - lower < MIN_SORT_ORDER_GAP);
+            }
+            ctx.update(table("shopping_list_item"))
+                    .set(field("sort_order"), sortOrder)
+                    .set(field("revision"), newRevision)
+                    .where(field("shopping_list_id").eq(shoppingListId))
+                    .and(field("id").eq(itemId))
+                    .execute();
+            return newRevision;
         });
+        notifyChange(shoppingListId, revision, ShoppingListChange.MOVE_ITEM, itemId);
+        if (rebalance.get()) {
+            scheduleRebalance(shoppingListId);
+        }
         return getEnrichedShoppingList(authenticatedUser, shoppingListId);
     }
 
+    private static Long getSortOrder(DSLContext ctx, String shoppingListId, String itemId) {
+        return ctx.select(field("sort_order"))
+                .from("shopping_list_item")
+                .where(field("shopping_list_id").eq(shoppingListId))
+                .and(field("id").eq(itemId))
+                .fetchOne(0, Long.class);
+    }
+
+    private void scheduleRebalance(String shoppingListId) {
+        if (!pendingRebalances.add(shoppingListId)) {
+            return;
+        }
+        try {
+            backgroundExecutor.execute(() -> {
+                try {
+                    rebalanceSortOrders(shoppingListId);
+                } catch (RuntimeException e) {
+                    // A later move schedules the next attempt.
+                    failedRebalances.increment();
+                    LOGGER.log(Level.WARNING, "Rebalancing the sort orders of shopping list " + shoppingListId + " failed.", e);
+                } finally {
+                    pendingRebalances.remove(shoppingListId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Too many lists are waiting or the DAO is closed. The list keeps working, only the gaps stay small.
+            pendingRebalances.remove(shoppingListId);
+        }
+    }
+
+    void rebalanceSortOrders(String shoppingListId) {
+        Long revision = dslContext.transactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            Long newRevision = updateShoppingListRevision(ctx, shoppingListId);
+            if (newRevision != null) {
+                renumberItems(ctx, shoppingListId, newRevision);
+            }
+            return newRevision;
+        });
+        if (revision != null) {
+            notifyChange(shoppingListId, revision, ShoppingListChange.REORDER_ITEMS, null);
+        }
+    }
+
+    // Deletes the lists the user owns and removes the user from the lists of others, in the transaction of ctx. The
+    // returned changes are passed to announceChanges once the transaction has committed.
+    List<ShoppingListChange> removeUser(DSLContext ctx, String userId) {
+        List<String> ownShoppingListIds = ctx.select(field("id"))
+                .from("shopping_list")
+                .where(field("owner").eq(userId))
+                .orderBy(field("id"))
+                .fetch(0, String.class);
+        Result<? extends Record> memberships = ctx.select(field("shopping_list_id"), field("invitation_accepted"))
+                .from("shopping_list_authorization")
+                .where(field("user_id").eq(userId))
+                .and(field("shopping_list_id").notIn(ownShoppingListIds))
+                .orderBy(field("shopping_list_id"))
+                .fetch();
+        List<ShoppingListChange> changes = new ArrayList<>();
+        for (Record membership : memberships) {
+            String shoppingListId = membership.getValue("shopping_list_id", String.class);
+            Long revision = updateShoppingListRevision(ctx, shoppingListId);
+            if (revision == null) {
+                continue;
+            }
+            addTombstone(ctx, shoppingListId, TOMBSTONE_USER, userId, revision);
+            String change = membership.getValue("invitation_accepted", Boolean.class)
+                    ? ShoppingListChange.LEAVE : ShoppingListChange.WITHDRAW_INVITATION;
+            changes.add(new ShoppingListChange(shoppingListId, revision, change, userId));
+        }
+        for (String shoppingListId : ownShoppingListIds) {
+            Long revision = updateShoppingListRevision(ctx, shoppingListId);
+            changes.add(new ShoppingListChange(shoppingListId, revision, ShoppingListChange.DELETE, null));
+        }
+        ctx.deleteFrom(table("shopping_list_tombstone"))
+                .where(field("shopping_list_id").in(ownShoppingListIds))
+                .execute();
+        ctx.deleteFrom(table("shopping_list_item"))
+                .where(field("shopping_list_id").in(ownShoppingListIds))
+                .execute();
+        ctx.deleteFrom(table("shopping_list_authorization"))
+                .where(field("shopping_list_id").in(ownShoppingListIds))
+                .execute();
+        ctx.deleteFrom(table("shopping_list_authorization"))
+                .where(field("user_id").eq(userId))
+                .execute();
+        ctx.deleteFrom(table("shopping_list"))
+                .where(field("owner").eq(userId))
+                .execute();
+        return changes;
+    }
+
+    // Gives every list the user is a member of or invited to a new version and revision, in the transaction of ctx.
+    // The lists show the names and versions of their users, so ETags, cached copies and deltas must change whenever a
+    // user is updated.
+    List<ShoppingListChange> updateUser(DSLContext ctx, String userId) {
+        List<String> shoppingListIds = ctx.select(field("shopping_list_id"))
+                .from("shopping_list_authorization")
+                .where(field("user_id").eq(userId))
+                .orderBy(field("shopping_list_id"))
+                .fetch(0, String.class);
+        List<ShoppingListChange> changes = new ArrayList<>();
+        for (String shoppingListId : shoppingListIds) {
+            Long revision = updateShoppingListRevision(ctx, shoppingListId);
+            if (revision != null) {
+                ctx.update(table("shopping_list_authorization"))
+                        .set(field("revision"), revision)
+                        .where(field("shopping_list_id").eq(shoppingListId))
+                        .and(field("user_id").eq(userId))
+                        .execute();
+                changes.add(new ShoppingListChange(shoppingListId, revision, ShoppingListChange.UPDATE_USER, userId));
+            }
+        }
+        return changes;
+    }
+
+    void announceChanges(List<ShoppingListChange> changes) {
+        for (ShoppingListChange change : changes) {
+            notifyChange(change.getShoppingListId(), change.getRevision(), change.getChange(), change.getEntityId());
+        }
+    }
+
+    private void notifyChange(String shoppingListId, long revision, String change, String entityId) {
+        enrichedShoppingListCache.invalidate(shoppingListId);
+        ShoppingListChange shoppingListChange = new ShoppingListChange(shoppingListId, revision, change, entityId);
+        for (ShoppingListChangeListener changeListener : changeListeners) {
+            try {
+                changeListener.shoppingListChanged(shoppingListChange);
+            } catch (RuntimeException e) {
+                // The mutation has already committed, a failing listener must not turn it into an error.
+                LOGGER.log(Level.WARNING, "A change listener failed for " + shoppingListChange + ".", e);
+            }
+        }
+    }
+
+    // Gives the list a new version and the next revision, and returns that revision (or null if the list does not exist).
+    // The row stays locked until the surrounding transaction ends, so revisions are handed out in commit order.
+    private static Long updateShoppingListRevision(DSLContext ctx, String shoppingListId) {
+        return updateShoppingListRevision(ctx, shoppingListId, UUID.randomUUID().toString());
+    }
+
+    private static Long updateShoppingListRevision(DSLContext ctx, String shoppingListId, String newVersion) {
+        int count = ctx.update(table("shopping_list"))
+                .set(field("version"), newVersion)
+                .set(field("revision", Long.class), field("revision", Long.class).plus(1L))
+                .where(field("id").eq(shoppingListId))
+                .execute();
+        if (count == 0) {
+            return null;
+        }
+        return ctx.select(field("revision"))
+                .from("shopping_list")
+                .where(field("id").eq(shoppingListId))
+                .fetchOne(0, Long.class);
+    }
+
+    // Hands out the sort order after the last item of the list. Must run after updateShoppingListRevision in the same
+    // transaction, which already holds the lock on the list row.
+    static long takeNextSortOrder(DSLContext ctx, String shoppingListId) {
+        return takeNextSortOrders(ctx, shoppingListId, 1);
+    }
+
+    // Reserves count consecutive sort orders at the end of the list and returns the first of them.
+    static long takeNextSortOrders(DSLContext ctx, String shoppingListId, int count) {
+        ctx.update(table("shopping_list"))
+                .set(field("next_sort_order", Long.class), field("next_sort_order", Long.class).plus(count * SORT_ORDER_GAP))
+                .where(field("id").eq(shoppingListId))
+                .execute();
+        return ctx.select(field("next_sort_order"))
+                .from("shopping_list")
+                .where(field("id").eq(shoppingListId))
+                .fetchOne(0, Long.class) - count * SORT_ORDER_GAP;
+    }
+
+    // Numbers the items of the list SORT_ORDER_GAP apart again, keeping their order. Every item gets the given revision,
+    // so clients that sync deltas receive the new sort orders.
+    private static void renumberItems(DSLContext ctx, String shoppingListId, long revision) {
+        List<String> itemIds = ctx.select(field("id"))
+                .from("shopping_list_item")
+                .where(field("shopping_list_id").eq(shoppingListId))
+                .orderBy(field("sort_order"))
+                .fetch(0, String.class);
+        List<Query> updates = new ArrayList<>();
+        for (int i = 0; i < itemIds.size(); i++) {
+            updates.add(ctx.update(table("shopping_list_item"))
+                    .set(field("sort_order"), i * SORT_ORDER_GAP)
+                    .set(field("revision"), revision)
+                    .where(field("id").eq(itemIds.get(i))));
+        }
+        updates.add(ctx.update(table("shopping_list"))
+                .set(field("next_sort_order"), itemIds.size() * SORT_ORDER_GAP)
+                .where(field("id").eq(shoppingListId)));
+        ctx.batch(updates).execute();
+    }
+
+    private static void addTombstone(DSLContext ctx, String shoppingListId, String kind, String entityId, long revision) {
+        insertTombstone(ctx, shoppingListId, kind, entityId, revision).execute();
+        pruneTombstones(ctx, shoppingListId);
+    }
+
+    private static Query insertTombstone(DSLContext ctx, String shoppingListId, String kind, String entityId, long revision) {
+        return ctx.insertInto(table("shopping_list_tombstone"))
+                .columns(field("shopping_list_id"), field("kind"), field("entity_id"), field("revision"), field("created_at"))
+                .values(shoppingListId, kind, entityId, revision, System.currentTimeMillis());
+    }
+
+    // Deletes the tombstones of the list that are older than TOMBSTONE_RETENTION and remembers the revision up to which
+    // they are gone. Runs whenever a tombstone is added, in the same transaction, which holds the lock on the list row.
+    static void pruneTombstones(DSLContext ctx, String shoppingListId) {
+        long cutoff = System.currentTimeMillis() - TOMBSTONE_RETENTION.toMillis();
+        Long prunedRevision = ctx.select(DSL.max(field("revision", Long.class)))
+                .from("shopping_list_tombstone")
+                .where(field("shopping_list_id").eq(shoppingListId))
+                .and(field("created_at", Long.class).lt(cutoff))
+                .fetchOne(0, Long.class);
+        if (prunedRevision == null) {
+            return;
+        }
+        ctx.deleteFrom(table("shopping_list_tombstone"))
+                .where(field("shopping_list_id").eq(shoppingListId))
+                .and(field("revision", Long.class).le(prunedRevision))
+                .execute();
+        ctx.update(table("shopping_list"))
+                .set(field("pruned_revision", Long.class), DSL.greatest(field("pruned_revision", Long.class), DSL.val(prunedRevision)))
+                .where(field("id").eq(shoppingListId))
+                .execute();
+    }
+
     public static class ShoppingListMapper implements RecordMapper<Record, ShoppingList> {
         @Override
         public ShoppingList map(Record record) {
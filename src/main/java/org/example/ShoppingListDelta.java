@@ -0,0 +1,120 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+
+public class ShoppingListDelta extends ShoppingList {
+
+    private long revision;
+    // Set if the delta holds the whole list instead of the changes, because the client's revision is too old.
+    private boolean fullSync;
+    private List<User> members;
+    private List<User> invitedUsers;
+    private List<ShoppingListItem> items;
+    private Map<String, Long> sortOrders;
+    private List<String> removedUserIds;
+    private List<String> removedItemIds;
+
+    public ShoppingListDelta(@JsonProperty("id") String id,
+                             @JsonProperty("version") String version,
+                             @JsonProperty("name") String name,
+                             @JsonProperty("owner") String owner,
+                             @JsonProperty("revision") long revision,
+                             @JsonProperty("fullSync") boolean fullSync,
+                             @JsonProperty("members") List<User> members,
+                             @JsonProperty("invitedUsers") List<User> invitedUsers,
+                             @JsonProperty("items") List<ShoppingListItem> items,
+                             @JsonProperty("sortOrders") Map<String, Long> sortOrders,
+                             @JsonProperty("removedUserIds") List<String> removedUserIds,
+                             @JsonProperty("removedItemIds") List<String> removedItemIds) {
+        super(id, version, name, owner);
+        this.revision = revision;
+        this.fullSync = fullSync;
+        this.members = members;
+        this.invitedUsers = invitedUsers;
+        this.items = items;
+        this.sortOrders = sortOrders;
+        this.removedUserIds = removedUserIds;
+        this.removedItemIds = removedItemIds;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    public boolean isFullSync() {
+        return fullSync;
+    }
+
+    public void setFullSync(boolean fullSync) {
+        this.fullSync = fullSync;
+    }
+
+    public List<User> getMembers() {
+        return members;
+    }
+
+    public void setMembers(List<User> members) {
+        this.members = members;
+    }
+
+    public List<User> getInvitedUsers() {
+        return invitedUsers;
+    }
+
+    public void setInvitedUsers(List<User> invitedUsers) {
+        this.invitedUsers = invitedUsers;
+    }
+
+    public List<ShoppingListItem> getItems() {
+        return items;
+    }
+
+    public void setItems(List<ShoppingListItem> items) {
+        this.items = items;
+    }
+
+    public Map<String, Long> getSortOrders() {
+        return sortOrders;
+    }
+
+    public void setSortOrders(Map<String, Long> sortOrders) {
+        this.sortOrders = sortOrders;
+    }
+
+    public List<String> getRemovedUserIds() {
+        return removedUserIds;
+    }
+
+    public void setRemovedUserIds(List<String> removedUserIds) {
+        this.removedUserIds = removedUserIds;
+    }
+
+    public List<String> getRemovedItemIds() {
+        return removedItemIds;
+    }
+
+    public void setRemovedItemIds(List<String> removedItemIds) {
+        this.removedItemIds = removedItemIds;
+    }
+
+    @Override
+    public String toString() {
+        return "ShoppingListDelta{" +
+                "revision=" + revision +
+                ", fullSync=" + fullSync +
+                ", members=" + members +
+                ", invitedUsers=" + invitedUsers +
+                ", items=" + items +
+                ", sortOrders=" + sortOrders +
+                ", removedUserIds=" + removedUserIds +
+                ", removedItemIds=" + removedItemIds +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,283 @@
+package org.example;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Pushes the changes of shopping lists to their subscribers as server-sent events.
+// An open subscription is only an SseEventSink with a small queue in a map; no thread waits for it. Events are added to
+// the queue of each subscription and written by a pool of sender threads, one event at a time per subscription.
+// Changes are announced after their transactions commit, so two changes of a list can arrive here out of revision
+// order. A subscription skips a change whose revision is not newer than the last one it queued: get-changes with the
+// newer revision already covers it. Clients therefore see increasing revisions (the event id), but not every one of
+// them. A client that does not keep up only fills its own queue: once the queue is full or a write takes longer than
+// the send timeout, the subscription is dropped and the client has to reconnect and catch up with get-changes.
+// Mutations never wait for clients.
+public class ShoppingListEvents implements ShoppingListChangeListener, AutoCloseable {
+    private static final Duration DEFAULT_HEARTBEAT_INTERVAL = Duration.ofSeconds(20);
+    private static final Duration DEFAULT_SEND_TIMEOUT = Duration.ofSeconds(10);
+    static final int MAX_QUEUED_EVENTS = 100;
+    private static final int SENDER_THREADS = 16;
+    // Passed instead of a revision for comments, which are never skipped.
+    private static final long NO_REVISION = -1;
+
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService dispatcher;
+    private final ExecutorService sender;
+    private final long sendTimeoutNanos;
+
+    public ShoppingListEvents() {
+        this(DEFAULT_HEARTBEAT_INTERVAL);
+    }
+
+    public ShoppingListEvents(Duration heartbeatInterval) {
+        this(heartbeatInterval, DEFAULT_SEND_TIMEOUT);
+    }
+
+    // The heartbeat keeps idle connections open behind proxies and detects clients that went away.
+    public ShoppingListEvents(Duration heartbeatInterval, Duration sendTimeout) {
+        sendTimeoutNanos = sendTimeout.toNanos();
+        dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shopping-list-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ThreadPoolExecutor senderPool = new ThreadPoolExecutor(SENDER_THREADS, SENDER_THREADS, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "shopping-list-events-sender");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        senderPool.allowCoreThreadTimeOut(true);
+        sender = senderPool;
+        dispatcher.scheduleAtFixedRate(this::sendHeartbeats,
+                heartbeatInterval.toMillis(), heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+        long stallCheckMillis = Math.max(1, sendTimeout.toMillis() / 2);
+        dispatcher.scheduleAtFixedRate(this::dropStalledSubscriptions, stallCheckMillis, stallCheckMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void subscribe(User user, String shoppingListId, SseEventSink sink) {
+        Subscription subscription = new Subscription(shoppingListId, user.getId(), sink);
+        subscriptions.compute(shoppingListId, (id, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+            }
+            set.add(subscription);
+            return set;
+        });
+        // Commits the response headers, so the client knows that the subscription is active.
+        enqueue(subscription, new OutboundEvent.Builder().comment("subscribed").build(), NO_REVISION, false);
+    }
+
+    @Override
+    public void shoppingListChanged(ShoppingListChange change) {
+        Set<Subscription> listSubscriptions = subscriptions.get(change.getShoppingListId());
+        if (listSubscriptions == null) {
+            return;
+        }
+        OutboundSseEvent event = new OutboundEvent.Builder()
+                .name("change")
+                .id(String.valueOf(change.getRevision()))
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(ShoppingListChange.class, change)
+                .build();
+        for (Subscription subscription : listSubscriptions) {
+            enqueue(subscription, event, change.getRevision(), isEndOfSubscription(change, subscription));
+        }
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptions.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @Override
+    public void close() {
+        dispatcher.shutdownNow();
+        sender.shutdownNow();
+        subscriptions.values().forEach(listSubscriptions -> listSubscriptions.forEach(this::drop));
+    }
+
+    // Authorization is only checked when subscribing, so a user who loses access to the list also loses the subscription.
+    private static boolean isEndOfSubscription(ShoppingListChange change, Subscription subscription) {
+        switch (change.getChange()) {
+            case ShoppingListChange.DELETE:
+                return true;
+            case ShoppingListChange.LEAVE:
+                return subscription.userId.equals(change.getEntityId());
+            default:
+                return false;
+        }
+    }
+
+    // Only idle subscriptions need a heartbeat; the others are already writing.
+    private void sendHeartbeats() {
+        OutboundSseEvent heartbeat = new OutboundEvent.Builder().comment("heartbeat").build();
+        subscriptions.values().forEach(listSubscriptions -> listSubscriptions.forEach(subscription -> {
+            if (subscription.isIdle()) {
+                enqueue(subscription, heartbeat, NO_REVISION, false);
+            }
+        }));
+    }
+
+    private void dropStalledSubscriptions() {
+        long now = System.nanoTime();
+        subscriptions.values().forEach(listSubscriptions -> listSubscriptions.forEach(subscription -> {
+            if (subscription.isStalled(now, sendTimeoutNanos)) {
+                drop(subscription);
+            }
+        }));
+    }
+
+    // Queues the event and starts writing if nothing is being written for the subscription. If last is set, the
+    // subscription is closed once the event is written; a skipped last event still closes it after the queued ones.
+    private void enqueue(Subscription subscription, OutboundSseEvent event, long revision, boolean last) {
+        boolean overflow = false;
+        boolean startSending = false;
+        synchronized (subscription) {
+            if (subscription.closed || subscription.closeWhenSent) {
+                return;
+            }
+            boolean stale = revision != NO_REVISION && revision <= subscription.lastRevision;
+            if (stale && !last) {
+                return;
+            }
+            if (!stale && subscription.queue.size() >= MAX_QUEUED_EVENTS) {
+                overflow = true;
+            } else {
+                if (!stale) {
+                    subscription.queue.add(event);
+                    subscription.lastRevision = Math.max(subscription.lastRevision, revision);
+                }
+                subscription.closeWhenSent = last;
+                if (!subscription.sending) {
+                    subscription.sending = true;
+                    subscription.sendingSince = System.nanoTime();
+                    startSending = true;
+                }
+            }
+        }
+        if (overflow) {
+            drop(subscription);
+        } else if (startSending) {
+            execute(() -> sendNext(subscription));
+        }
+    }
+
+    // Writes the next queued event and continues on a sender thread when the write has completed.
+    private void sendNext(Subscription subscription) {
+        OutboundSseEvent event;
+        synchronized (subscription) {
+            if (subscription.closed) {
+                return;
+            }
+            event = subscription.queue.poll();
+            if (event == null) {
+                subscription.sending = false;
+                if (!subscription.closeWhenSent) {
+                    return;
+                }
+            } else {
+                subscription.sendingSince = System.nanoTime();
+            }
+        }
+        if (event == null || subscription.sink.isClosed()) {
+            drop(subscription);
+            return;
+        }
+        try {
+            subscription.sink.send(event).whenCompleteAsync((result, throwable) -> {
+                if (throwable != null) {
+                    drop(subscription);
+                } else {
+                    sendNext(subscription);
+                }
+            }, sender);
+        } catch (RuntimeException e) {
+            drop(subscription);
+        }
+    }
+
+    // Stops writing to the subscription right away. Closing the sink can block on a slow connection, so it is left to
+    // a sender thread.
+    private void drop(Subscription subscription) {
+        synchronized (subscription) {
+            if (subscription.closed) {
+                return;
+            }
+            subscription.closed = true;
+            subscription.queue.clear();
+        }
+        remove(subscription);
+        if (!execute(() -> close(subscription))) {
+            close(subscription);
+        }
+    }
+
+    private void remove(Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.shoppingListId, (id, set) -> {
+            set.remove(subscription);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static void close(Subscription subscription) {
+        try {
+            subscription.sink.close();
+        } catch (RuntimeException e) {
+            // The connection is already gone.
+        }
+    }
+
+    private boolean execute(Runnable task) {
+        try {
+            sender.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Shutting down; close() drops the remaining subscriptions.
+            return false;
+        }
+    }
+
+    private static class Subscription {
+        private final String shoppingListId;
+        private final String userId;
+        private final SseEventSink sink;
+        // The fields below are guarded by the subscription itself.
+        private final Queue<OutboundSseEvent> queue = new ArrayDeque<>();
+        private long lastRevision = NO_REVISION;
+        private boolean sending;
+        private long sendingSince;
+        private boolean closeWhenSent;
+        private boolean closed;
+
+        private Subscription(String shoppingListId, String userId, SseEventSink sink) {
+            this.shoppingListId = shoppingListId;
+            this.userId = userId;
+            this.sink = sink;
+        }
+
+        private synchronized boolean isIdle() {
+            return !sending && !closed;
+        }
+
+        // Sending for longer than the timeout without finishing a single event.
+        private synchronized boolean isStalled(long now, long timeoutNanos) {
+            return sending && !closed && now - sendingSince > timeoutNanos;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ShoppingListItemOperation {
+    public static final String ADD = "add";
+    public static final String REMOVE = "remove";
+    public static final String SET_BOUGHT = "set-bought";
+    public static final String SET_UNBOUGHT = "set-unbought";
+
+    private String operation;
+    private ShoppingListItem item;
+
+    public ShoppingListItemOperation(@JsonProperty("operation") String operation,
+                                     @JsonProperty("item") ShoppingListItem item) {
+        this.operation = operation;
+        this.item = item;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public ShoppingListItem getItem() {
+        return item;
+    }
+
+    public void setItem(ShoppingListItem item) {
+        this.item = item;
+    }
+
+    @Override
+    public String toString() {
+        return "ShoppingListItemOperation{" +
+                "operation='" + operation + '\'' +
+                ", item=" + item +
+                '}';
+    }
+}
@@ -0,0 +1,64 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// The minimal response of an item mutation: the affected item and the list version the mutation produced.
+public class ShoppingListItemResult {
+    private ShoppingListItem item;
+    private String version;
+    private long revision;
+    private Boolean othersChanged;
+
+    public ShoppingListItemResult(@JsonProperty("item") ShoppingListItem item,
+                                  @JsonProperty("version") String version,
+                                  @JsonProperty("revision") long revision,
+                                  @JsonProperty("othersChanged") Boolean othersChanged) {
+        this.item = item;
+        this.version = version;
+        this.revision = revision;
+        this.othersChanged = othersChanged;
+    }
+
+    public ShoppingListItem getItem() {
+        return item;
+    }
+
+    public void setItem(ShoppingListItem item) {
+        this.item = item;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    // Whether the list had changed since the version the client knew, or null if the client did not say.
+    public Boolean getOthersChanged() {
+        return othersChanged;
+    }
+
+    public void setOthersChanged(Boolean othersChanged) {
+        this.othersChanged = othersChanged;
+    }
+
+    @Override
+    public String toString() {
+        return "ShoppingListItemResult{" +
+                "item=" + item +
+                ", version='" + version + '\'' +
+                ", revision=" + revision +
+                ", othersChanged=" + othersChanged +
+                '}';
+    }
+}
@@ -2,13 +2,20 @@ package org.example;
 
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.SseEventSink;
 
 import java.util.List;
 
@@ -16,24 +23,33 @@ import java.util.List;
 @Consumes(MediaType.APPLICATION_JSON)
 @Produces(MediaType.APPLICATION_JSON)
 public class ShoppingListResource {
+    private static final String RETURN_MINIMAL = "minimal";
+
     private final UserDAO userDAO;
     private final ShoppingListDAO shoppingListDAO;
+    private final ShoppingListEvents shoppingListEvents;
 
-    public ShoppingListResource(UserDAO userDAO, ShoppingListDAO shoppingListDAO) {
+    public ShoppingListResource(UserDAO userDAO, ShoppingListDAO shoppingListDAO, ShoppingListEvents shoppingListEvents) {
         this.userDAO = userDAO;
         this.shoppingListDAO = shoppingListDAO;
+        this.shoppingListEvents = shoppingListEvents;
     }
 
     @GET
     @Path("get/{id}")
-    public ShoppingList getShoppingList(@PathParam("id") String id, @HeaderParam("Authorization") String auth) {
+    public Response getShoppingList(@PathParam("id") String id, @HeaderParam("Authorization") String auth, @Context Request request) {
         User authenticatedUser = userDAO.authenticate(auth);
-        if (!shoppingListDAO.isUserAuthorizedForShoppingList(authenticatedUser, id)) {
+        String version = shoppingListDAO.getShoppingListVersion(authenticatedUser, id);
+        if (version == null) {
             throw new ApplicationException("Not authorized.");
         }
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(new EntityTag(version));
+        if (notModified != null) {
+            return notModified.build();
+        }
         ShoppingList shoppingList = shoppingListDAO.getShoppingList(authenticatedUser,id);
 
-        return shoppingList;
+        return Response.ok(shoppingList).tag(new EntityTag(shoppingList.getVersion())).build();
     }
 
     @GET
@@ -51,6 +67,7 @@ public class ShoppingListResource {
     }
 
     @POST
+    @Idempotent
     @Path("add")
     public ShoppingList addShoppingList(ShoppingList shoppingList, @HeaderParam("Authorization") String auth) {
         User authenticatedUser = userDAO.authenticate(auth);
@@ -58,6 +75,7 @@ public class ShoppingListResource {
     }
 
     @POST
+    @Idempotent
     @Path("rename")
     public ShoppingList renameShoppingList(ShoppingList shoppingList, @HeaderParam("Authorization") String auth) {
         User authenticatedUser = userDAO.authenticate(auth);
@@ -72,6 +90,7 @@ public class ShoppingListResource {
     }
 
     @POST
+    @Idempotent
     @Path("invite/{shopping-list-id}/{user-id}")
     public List<User> invite(@PathParam("shopping-list-id") String shoppingListId, @PathParam("user-id") String userId, @HeaderParam("Authorization") String auth) {
         User authenticatedUser = userDAO.authenticate(auth);
@@ -84,6 +103,7 @@ public class ShoppingListResource {
     }
     
     @POST
+    @Idempotent
     @Path("withdraw-invitation/{shopping-list-id}/{user-id}")
     public List<User> withdrawInvitation(@PathParam("shopping-list-id") String shoppingListId, @PathParam("user-id") String userId, @HeaderParam("Authorization") String auth) {
         User authenticatedUser = userDAO.authenticate(auth);
@@ -110,6 +130,7 @@ public class ShoppingListResource {
     }
 
     @POST
+    @Idempotent
     @Path("accept-invitation/{shopping-list-id}")
     public void acceptInvitation(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth) {
         User authenticatedUser = userDAO.authenticate(auth);
@@ -117,6 +138,7 @@ public class ShoppingListResource {
     }
 
     @POST
+    @Idempotent
     @Path("reject-invitation/{shopping-list-id}")
     public void rejectInvitation(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth) {
         User authenticatedUser = userDAO.authenticate(auth);
@@ -124,6 +146,7 @@ public class ShoppingListResource {
     }
 
     @POST
+    @Idempotent
     @Path("leave-shopping-list/{shopping-list-id}")
     public void leaveShoppingList(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth) {
         User authenticatedUser = userDAO.authenticate(auth);
@@ -131,6 +154,7 @@ public class ShoppingListResource {
     }
 
     @POST
+    @Idempotent
     @Path("remove-user-from-shopping-list/{shopping-list-id}/{user-id}")
     public List<User> removeUserFromShoppingList(@PathParam("shopping-list-id") String shoppingListId, @PathParam("user-id") String userId, @HeaderParam("Authorization") String auth) {
         User authenticatedUser = userDAO.authenticate(auth);
@@ -140,36 +164,133 @@ public class ShoppingListResource {
 
     @GET
     @Path("get-enriched/{shopping-list-id}")
-    public EnrichedShoppingList getEnriched(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth) {
+    public Response getEnriched(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth, @Context Request request) {
+        User authenticatedUser = userDAO.authenticate(auth);
+        String version = shoppingListDAO.getShoppingListVersion(authenticatedUser, shoppingListId);
+        if (version == null) {
+            throw new ApplicationException("ShoppingList not found.");
+        }
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(new EntityTag(version));
+        if (notModified != null) {
+            return notModified.build();
+        }
+        EnrichedShoppingList enrichedShoppingList = shoppingListDAO.getEnrichedShoppingList(authenticatedUser, shoppingListId, version);
+        return Response.ok(enrichedShoppingList).tag(new EntityTag(enrichedShoppingList.getVersion())).build();
+    }
+
+    @GET
+    @Path("get-changes/{shopping-list-id}")
+    public ShoppingListDelta getChanges(@PathParam("shopping-list-id") String shoppingListId, @QueryParam("since") @DefaultValue("-1") long sinceRevision, @HeaderParam("Authorization") String auth) {
+        User authenticatedUser = userDAO.authenticate(auth);
+        return shoppingListDAO.getShoppingListDelta(authenticatedUser, shoppingListId, sinceRevision);
+    }
+
+    @GET
+    @Path("subscribe/{shopping-list-id}")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void subscribe(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth, @Context SseEventSink sink) {
         User authenticatedUser = userDAO.authenticate(auth);
-        return shoppingListDAO.getEnrichedShoppingList(authenticatedUser, shoppingListId);
+        if (!shoppingListDAO.isUserAuthorizedForShoppingList(authenticatedUser, shoppingListId)) {
+            throw new ApplicationException("Not authorized.");
+        }
+        shoppingListEvents.subscribe(authenticatedUser, shoppingListId, sink);
     }
 
     @POST
+    @Idempotent
     @Path("add-item/{shopping-list-id}")
-    public EnrichedShoppingList addItem(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth, ShoppingListItem item) {
+    public Response addItem(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth,
+                            @HeaderParam("Prefer") String prefer, @QueryParam("return") String returnPreference, @QueryParam("known-version") String knownVersion,
+                            ShoppingListItem item) {
         User authenticatedUser = userDAO.authenticate(auth);
-        return shoppingListDAO.addShoppingListItem(authenticatedUser, shoppingListId, item);
+        if (isReturnMinimal(prefer, returnPreference)) {
+            return minimal(shoppingListDAO.addShoppingListItemMinimal(authenticatedUser, shoppingListId, item, emptyToNull(knownVersion)));
+        }
+        return Response.ok(shoppingListDAO.addShoppingListItem(authenticatedUser, shoppingListId, item)).build();
     }
 
     @POST
+    @Idempotent
     @Path("remove-item/{shopping-list-id}")
-    public EnrichedShoppingList removeItem(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth, ShoppingListItem item) {
+    public Response removeItem(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth,
+                            @HeaderParam("Prefer") String prefer, @QueryParam("return") String returnPreference, @QueryParam("known-version") String knownVersion,
+                            ShoppingListItem item) {
         User authenticatedUser = userDAO.authenticate(auth);
-        return shoppingListDAO.removeShoppingListItem(authenticatedUser, shoppingListId, item);
+        if (isReturnMinimal(prefer, returnPreference)) {
+            return minimal(shoppingListDAO.removeShoppingListItemMinimal(authenticatedUser, shoppingListId, item, emptyToNull(knownVersion)));
+        }
+        return Response.ok(shoppingListDAO.removeShoppingListItem(authenticatedUser, shoppingListId, item)).build();
     }
 
     @POST
+    @Idempotent
+    @Path("apply-item-operations/{shopping-list-id}")
+    public EnrichedShoppingList applyItemOperations(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth, List<ShoppingListItemOperation> operations) {
+        User authenticatedUser = userDAO.authenticate(auth);
+        return shoppingListDAO.applyShoppingListItemOperations(authenticatedUser, shoppingListId, operations);
+    }
+
+    @POST
+    @Idempotent
+    @Path("move-item/{shopping-list-id}/{item-id}")
+    public EnrichedShoppingList moveItem(@PathParam("shopping-list-id") String shoppingListId, @PathParam("item-id") String itemId, @QueryParam("after") String afterItemId, @HeaderParam("Authorization") String auth) {
+        User authenticatedUser = userDAO.authenticate(auth);
+        return shoppingListDAO.moveShoppingListItem(authenticatedUser, shoppingListId, itemId, afterItemId);
+    }
+
+    @POST
+    @Idempotent
     @Path("set-bought/{shopping-list-id}")
-    public EnrichedShoppingList setBought(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth, ShoppingListItem item) {
+    public Response setBought(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth,
+                            @HeaderParam("Prefer") String prefer, @QueryParam("return") String returnPreference, @QueryParam("known-version") String knownVersion,
+                            ShoppingListItem item) {
         User authenticatedUser = userDAO.authenticate(auth);
-        return shoppingListDAO.setBought(authenticatedUser, shoppingListId, item);
+        if (isReturnMinimal(prefer, returnPreference)) {
+            return minimal(shoppingListDAO.setBoughtMinimal(authenticatedUser, shoppingListId, item, emptyToNull(knownVersion)));
+        }
+        return Response.ok(shoppingListDAO.setBought(authenticatedUser, shoppingListId, item)).build();
     }
 
     @POST
+    @Idempotent
     @Path("set-unbought/{shopping-list-id}")
-    public EnrichedShoppingList setUnbought(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth, ShoppingListItem item) {
+    public Response setUnbought(@PathParam("shopping-list-id") String shoppingListId, @HeaderParam("Authorization") String auth,
+                            @HeaderParam("Prefer") String prefer, @QueryParam("return") String returnPreference, @QueryParam("known-version") String knownVersion,
+                            ShoppingListItem item) {
         User authenticatedUser = userDAO.authenticate(auth);
-        return shoppingListDAO.setUnbought(authenticatedUser, shoppingListId, item);
+        if (isReturnMinimal(prefer, returnPreference)) {
+            return minimal(shoppingListDAO.setUnboughtMinimal(authenticatedUser, shoppingListId, item, emptyToNull(knownVersion)));
+        }
+        return Response.ok(shoppingListDAO.setUnbought(authenticatedUser, shoppingListId, item)).build();
+    }
+
+    // Item mutations answer with only the affected item and the new list version if the client asks for it with
+    // "Prefer: return=minimal" or "?return=minimal". With "?known-version=" the client passes the list version it last
+    // saw, and the answer says whether anybody else changed the list since then. It is only a hint and never rejects
+    // the mutation, so it is not sent as If-Match.
+    private static boolean isReturnMinimal(String prefer, String returnPreference) {
+        if (RETURN_MINIMAL.equals(returnPreference)) {
+            return true;
+        }
+        if (prefer == null) {
+            return false;
+        }
+        for (String preference : prefer.split("[,;]")) {
+            if (preference.trim().equals("return=" + RETURN_MINIMAL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    private static Response minimal(ShoppingListItemResult result) {
+        return Response.ok(result)
+                .tag(new EntityTag(result.getVersion()))
+                .header("Preference-Applied", "return=" + RETURN_MINIMAL)
+                .build();
     }
 }
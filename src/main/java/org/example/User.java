@@ -70,6 +70,10 @@ public class User {
         if (name.length() > MAX_NAME_LENGTH) {
             return false;
         }
+        return hasValidCharacters(name);
+    }
+
+    public static boolean hasValidCharacters(String name) {
         for(int i = 0; i < name.length(); i++) {
             if (!VALID_CHARACTERS.contains(name.substring(i, i+1))) {
                 return false;
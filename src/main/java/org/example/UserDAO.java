@@ -1,46 +1,150 @@
 package org.example;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
 import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Record3;
 import org.jooq.RecordMapper;
 import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import static org.jooq.impl.DSL.field;
 import static org.jooq.impl.DSL.table;
 
 public class UserDAO {
+    private static final long DEFAULT_AUTHENTICATION_CACHE_SIZE = 10000;
+    private static final Duration DEFAULT_AUTHENTICATION_CACHE_TTL = Duration.ofMinutes(5);
+    private static final long USER_VERSION_CACHE_SIZE = 100000;
+    // Changes made through this DAO update the cached versions at once. Changes made on another node are only seen once
+    // the entry expires, so a revoked session token keeps working here for at most this long.
+    private static final Duration DEFAULT_USER_VERSION_CACHE_TTL = Duration.ofSeconds(10);
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAMING_FETCH_SIZE = 500;
+    private static final int MAX_SEARCH_RESULTS = 50;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
     private final DSLContext dslContext;
-    private MessageDigest digest;
+    private final PasswordHasher passwordHasher;
+    private final Cache<String, User> authenticationCache;
+    private final String fingerprintSalt;
+    private final AtomicLong authenticationCacheInvalidations;
+    private final SessionTokens sessionTokens;
+    // Changes to shopping lists go through it, so its cache and change listeners see them.
+    private final ShoppingListDAO shoppingListDAO;
+    private final Cache<String, String> currentUserVersions;
+    // Loaded on the first search. Changes made through this DAO are applied to it while holding its lock. Users written
+    // by other nodes are not seen until clearCaches, so searches are only complete on a single node.
+    private final UserNameIndex userNameIndex = new UserNameIndex();
+    private volatile boolean userNameIndexLoaded = false;
 
     public UserDAO(DSLContext dslContext) {
+        this(dslContext, new SessionTokens());
+    }
+
+    public UserDAO(DSLContext dslContext, SessionTokens sessionTokens) {
+        this(dslContext, sessionTokens, new ShoppingListDAO(dslContext));
+    }
+
+    public UserDAO(DSLContext dslContext, SessionTokens sessionTokens, ShoppingListDAO shoppingListDAO) {
+        this(dslContext, sessionTokens, shoppingListDAO, DEFAULT_AUTHENTICATION_CACHE_SIZE, DEFAULT_AUTHENTICATION_CACHE_TTL);
+    }
+
+    public UserDAO(DSLContext dslContext, SessionTokens sessionTokens, ShoppingListDAO shoppingListDAO,
+                   long authenticationCacheSize, Duration authenticationCacheTtl) {
+        this(dslContext, sessionTokens, shoppingListDAO, authenticationCacheSize, authenticationCacheTtl, DEFAULT_USER_VERSION_CACHE_TTL);
+    }
+
+    public UserDAO(DSLContext dslContext, SessionTokens sessionTokens, ShoppingListDAO shoppingListDAO,
+                   long authenticationCacheSize, Duration authenticationCacheTtl, Duration userVersionCacheTtl) {
         this.dslContext = dslContext;
-        try {
-            this.digest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
+        this.sessionTokens = sessionTokens;
+        this.shoppingListDAO = shoppingListDAO;
+        this.currentUserVersions = Caffeine.newBuilder()
+                .maximumSize(USER_VERSION_CACHE_SIZE)
+                .expireAfterWrite(userVersionCacheTtl)
+                .build();
+        this.passwordHasher = new PasswordHasher();
+        this.authenticationCache = Caffeine.newBuilder()
+                .maximumSize(authenticationCacheSize)
+                .expireAfterWrite(authenticationCacheTtl)
+                .recordStats()
+                .build();
+        this.fingerprintSalt = passwordHasher.newSalt();
+        this.authenticationCacheInvalidations = new AtomicLong();
     }
 
     public List<User> getAllAppUsers() {
-        List<UserFromDB> usersFromDB = dslContext.selectFrom("user_account").fetch(new UserMapper());
-        List<User> users = new ArrayList<>();
-        for(UserFromDB userFromDB : usersFromDB) {
-            users.add(new User(userFromDB.getId(), userFromDB.getVersion(), userFromDB.getName(), null));
+        return dslContext.select(field("id"), field("version"), field("name"))
+                .from("user_account")
+                .fetch(record -> new User(
+                        record.getValue("id", String.class),
+                        record.getValue("version", String.class),
+                        record.getValue("name", String.class),
+                        null));
+    }
+
+    // Keyset pagination on the primary key: the cursor is the last id of the previous page.
+    public UserPage getAppUsersPage(String cursor, int pageSize) throws ApplicationException {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ApplicationException("Invalid page size.");
+        }
+        List<User> users = dslContext.select(field("id"), field("version"), field("name"))
+                .from("user_account")
+                .where(cursor == null ? DSL.noCondition() : field("id", String.class).gt(cursor))
+                .orderBy(field("id"))
+                .limit(pageSize + 1)
+                .fetch(record -> new User(
+                        record.getValue("id", String.class),
+                        record.getValue("version", String.class),
+                        record.getValue("name", String.class),
+                        null));
+        if (users.size() <= pageSize) {
+            return new UserPage(users, null);
         }
-        return users;
+        users.remove(pageSize);
+        return new UserPage(users, users.get(pageSize - 1).getId());
+    }
+
+    // Writes all users as a JSON array while reading them, so memory use does not grow with the number of users.
+    // The rows are read in a transaction, because the Postgres driver only honors the fetch size without auto-commit.
+    public void writeAllAppUsers(OutputStream outputStream) {
+        dslContext.transaction(configuration -> {
+            try (Cursor<Record3<Object, Object, Object>> cursor = DSL.using(configuration)
+                    .select(field("id"), field("version"), field("name"))
+                    .from("user_account")
+                    .orderBy(field("id"))
+                    .fetchSize(STREAMING_FETCH_SIZE)
+                    .fetchLazy();
+                 JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+                generator.writeStartArray();
+                for (Record3<Object, Object, Object> record : cursor) {
+                    generator.writeStartObject();
+                    generator.writeStringField("id", record.getValue("id", String.class));
+                    generator.writeStringField("version", record.getValue("version", String.class));
+                    generator.writeStringField("name", record.getValue("name", String.class));
+                    generator.writeNullField("password");
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+        });
     }
 
     public User getUser(String id) throws ApplicationException {
@@ -55,6 +159,46 @@ public class UserDAO {
     }
 
     public User authenticate(String id, String auth) throws ApplicationException {
+        if (SessionTokens.isSessionToken(auth)) {
+            User user = authenticateWithSessionToken(auth);
+            if (!user.getId().equals(id)) {
+                throw new ApplicationException("Wrong credentials.");
+            }
+            return user;
+        }
+        String fingerprint = getCredentialFingerprint(auth);
+        User cachedUser = authenticationCache.getIfPresent(fingerprint);
+        if (cachedUser != null && cachedUser.getId().equals(id)) {
+            return cachedUser;
+        }
+        return authenticateWithDB(id, auth, fingerprint);
+    }
+
+    public User authenticate(String auth) throws ApplicationException {
+        if (SessionTokens.isSessionToken(auth)) {
+            return authenticateWithSessionToken(auth);
+        }
+        String fingerprint = getCredentialFingerprint(auth);
+        User cachedUser = authenticationCache.getIfPresent(fingerprint);
+        if (cachedUser != null) {
+            return cachedUser;
+        }
+        final IdAndPassword idAndPassword = new IdAndPassword(auth);
+        return authenticateWithDB(idAndPassword.id, auth, fingerprint);
+    }
+
+    public String login(String auth) throws ApplicationException {
+        User user = authenticate(auth);
+        currentUserVersions.asMap().putIfAbsent(user.getId(), user.getVersion());
+        return sessionTokens.issue(user);
+    }
+
+    public CacheStats getAuthenticationCacheStats() {
+        return authenticationCache.stats();
+    }
+
+    private User authenticateWithDB(String id, String auth, String fingerprint) throws ApplicationException {
+        long invalidations = authenticationCacheInvalidations.get();
         List<UserFromDB> usersFromDB = dslContext.selectFrom("user_account")
                 .where(field("id").eq(id))
                 .fetch(new UserMapper());
@@ -63,12 +207,22 @@ public class UserDAO {
         }
         UserFromDB userFromDB = usersFromDB.get(0);
         verifyAuthentication(auth, userFromDB);
-        return new User(userFromDB.getId(), userFromDB.getVersion(), userFromDB.getName(), null);
+        User user = new User(userFromDB.getId(), userFromDB.getVersion(), userFromDB.getName(), null);
+        authenticationCache.put(fingerprint, user);
+        if (authenticationCacheInvalidations.get() != invalidations) {
+            // The user may have been changed while we were reading it, so the entry might be stale.
+            authenticationCache.invalidate(fingerprint);
+        }
+        return user;
     }
 
-    public User authenticate(String auth) throws ApplicationException {
-        final IdAndPassword idAndPassword = new IdAndPassword(auth);
-        return authenticate(idAndPassword.id, auth);
+    private User authenticateWithSessionToken(String auth) throws ApplicationException {
+        User user = sessionTokens.verify(auth);
+        String currentVersion = currentUserVersions.get(user.getId(), id -> getUser(id).getVersion());
+        if (!user.getVersion().equals(currentVersion)) {
+            throw new ApplicationException("Session token was revoked.");
+        }
+        return user;
     }
 
     public String getUserIdByName(String name) throws ApplicationException {
@@ -83,6 +237,58 @@ public class UserDAO {
         return userFromDB.getId();
     }
 
+    public List<User> searchUsersByName(String prefix, int limit) throws ApplicationException {
+        if (prefix == null || prefix.isEmpty() || !User.hasValidCharacters(prefix)) {
+            throw new ApplicationException("Invalid search prefix.");
+        }
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new ApplicationException("Invalid number of search results.");
+        }
+        loadUserNameIndex();
+        return userNameIndex.search(User.getNormalizedName(prefix), limit);
+    }
+
+    private void loadUserNameIndex() {
+        if (userNameIndexLoaded) {
+            return;
+        }
+        synchronized (userNameIndex) {
+            if (userNameIndexLoaded) {
+                return;
+            }
+            dslContext.transaction(configuration -> {
+                try (Cursor<Record2<Object, Object>> cursor = DSL.using(configuration)
+                        .select(field("id"), field("name"))
+                        .from("user_account")
+                        .fetchSize(STREAMING_FETCH_SIZE)
+                        .fetchLazy()) {
+                    for (Record2<Object, Object> record : cursor) {
+                        userNameIndex.put(record.getValue("id", String.class), record.getValue("name", String.class));
+                    }
+                }
+            });
+            userNameIndexLoaded = true;
+        }
+    }
+
+    // For when the tables were dropped and recreated, e.g. by Migrator.reset. The index is loaded again on the next search.
+    public void clearCaches() {
+        synchronized (userNameIndex) {
+            userNameIndex.clear();
+            userNameIndexLoaded = false;
+        }
+        authenticationCache.invalidateAll();
+        currentUserVersions.invalidateAll();
+    }
+
+    private void updateUserNameIndex(Consumer<UserNameIndex> update) {
+        synchronized (userNameIndex) {
+            if (userNameIndexLoaded) {
+                update.accept(userNameIndex);
+            }
+        }
+    }
+
     public User addUser(User user) throws ApplicationException {
         System.out.println(user);
         if (!User.isNameValid(user.getName())) {
@@ -95,7 +301,7 @@ public class UserDAO {
         String newVersion = UUID.randomUUID().toString();
         String normalizedName = User.getNormalizedName(user.getName());
 
-        HashedPasswordAndSalt hashedPasswordAndSalt = new HashedPasswordAndSalt(digest, user.getPassword());
+        HashedPasswordAndSalt hashedPasswordAndSalt = new HashedPasswordAndSalt(passwordHasher, user.getPassword());
         String hashedPassword = hashedPasswordAndSalt.hashedPassword;
         String salt = hashedPasswordAndSalt.salt;
         System.out.println(hashedPassword);
@@ -107,6 +313,7 @@ public class UserDAO {
         } catch (DataAccessException e) {
             throw new ApplicationException("The user name already exists.");
         }
+        updateUserNameIndex(index -> index.put(newId, user.getName()));
         return getUser(newId);
     }
 
@@ -120,63 +327,55 @@ public class UserDAO {
         }
         String normalizedName = User.getNormalizedName(user.getName());
         String newVersion = UUID.randomUUID().toString();
-        HashedPasswordAndSalt hashedPasswordAndSalt = new HashedPasswordAndSalt(digest, user.getPassword());
+        HashedPasswordAndSalt hashedPasswordAndSalt = new HashedPasswordAndSalt(passwordHasher, user.getPassword());
         String hashedPassword = hashedPasswordAndSalt.hashedPassword;
         String salt = hashedPasswordAndSalt.salt;
-        int count = 0;
+        List<ShoppingListChange> shoppingListChanges;
         try {
-            count = dslContext.update(table("user_account"))
-                    .set(field("id"), user.getId())
-                    .set(field("version"), newVersion)
-                    .set(field("name"), user.getName())
-                    .set(field("normalized_name"), normalizedName)
-                    .set(field("hashed_password"), hashedPassword)
-                    .set(field("salt"), salt)
-                    .where(field("id").eq(user.getId()))
-                    .and(field("version").eq(user.getVersion()))
-                    .execute();
+            shoppingListChanges = dslContext.transactionResult(configuration -> {
+                DSLContext ctx = DSL.using(configuration);
+                int count = ctx.update(table("user_account"))
+                        .set(field("id"), user.getId())
+                        .set(field("version"), newVersion)
+                        .set(field("name"), user.getName())
+                        .set(field("normalized_name"), normalizedName)
+                        .set(field("hashed_password"), hashedPassword)
+                        .set(field("salt"), salt)
+                        .where(field("id").eq(user.getId()))
+                        .and(field("version").eq(user.getVersion()))
+                        .execute();
+                if (count == 0) {
+                    throw new ApplicationException("The version is outdated.");
+                }
+                return shoppingListDAO.updateUser(ctx, user.getId());
+            });
         } catch (DataAccessException e) {
             throw new ApplicationException("The new user name already exists.");
         }
-        if (count == 0) {
-            throw new ApplicationException("The version is outdated.");
-        }
+        invalidateAuthenticationCache(user.getId());
+        currentUserVersions.put(user.getId(), newVersion);
+        updateUserNameIndex(index -> {
+            index.remove(user.getId(), authenticatedUser.getName());
+            index.put(user.getId(), user.getName());
+        });
+        shoppingListDAO.announceChanges(shoppingListChanges);
         return getUser(user.getId());
     }
 
     public User deleteUser(String id, String auth) {
         User authenticatedUser = authenticate(id, auth);
-        dslContext.transaction(configuration -> {
+        List<ShoppingListChange> shoppingListChanges = dslContext.transactionResult(configuration -> {
             DSLContext ctx = DSL.using(configuration);
-            List<String> shoppingListIds = ctx.select(field("id"))
-                    .from("shopping_list")
-                    .where(field("owner").eq(id))
-                    .fetch(record -> record.getValue("id", String.class));
-//            List<String> itemIds = ctx.select(field("item_id"))
-//                    .from("shopping_list_shopping_list_item")
-//                    .where(field("shopping_list_id").in(shoppingListIds))
-//                    .fetch(record -> record.getValue("id", String.class));
-//            ctx.deleteFrom(table("shopping_list_shopping_list_item"))
-//                    .where(field("shopping_list_id").in(shoppingListIds))
-//                    .execute();
-            ctx.deleteFrom(table("shopping_list_item"))
-                    .where(field("shopping_list_id").in(shoppingListIds))
-                    .execute();
-            ctx.deleteFrom(table("shopping_list_authorization"))
-                    .where(field("shopping_list_id").in(
-                            shoppingListIds
-                    ))
-                    .execute();
-            DSL.using(configuration).deleteFrom(table("shopping_list_authorization"))
-                    .where(field("user_id").eq(id))
-                    .execute();
-            DSL.using(configuration).deleteFrom(table("shopping_list"))
-                    .where(field("owner").eq(id))
-                    .execute();
-            DSL.using(configuration).deleteFrom(table("user_account"))
+            List<ShoppingListChange> changes = shoppingListDAO.removeUser(ctx, id);
+            ctx.deleteFrom(table("user_account"))
                     .where(field("id").eq(id))
                     .execute();
+            return changes;
         });
+        invalidateAuthenticationCache(id);
+        currentUserVersions.invalidate(id);
+        updateUserNameIndex(index -> index.remove(id, authenticatedUser.getName()));
+        shoppingListDAO.announceChanges(shoppingListChanges);
         return authenticatedUser;
     }
 
@@ -185,19 +384,31 @@ public class UserDAO {
                 Base64.getEncoder().encode((id + ":" + password).getBytes(StandardCharsets.UTF_8)));
     }
 
+    private String getCredentialFingerprint(String auth) {
+        if (auth == null) {
+            throw new ApplicationException("Authentication header is missing.");
+        }
+        return passwordHasher.hash(auth, fingerprintSalt);
+    }
+
+    private void invalidateAuthenticationCache(String userId) {
+        authenticationCacheInvalidations.incrementAndGet();
+        authenticationCache.asMap().values().removeIf(user -> user.getId().equals(userId));
+    }
+
     private void verifyAuthentication(String auth, UserFromDB userFromDB) {
         final IdAndPassword idAndPassword = new IdAndPassword(auth);
         final String id = idAndPassword.id;
         final String password = idAndPassword.password;
 
-        HashedPasswordAndSalt hashedPasswordAndSalt = new HashedPasswordAndSalt(digest, password, userFromDB.getSalt());
+        HashedPasswordAndSalt hashedPasswordAndSalt = new HashedPasswordAndSalt(passwordHasher, password, userFromDB.getSalt());
         String hashedPassword = hashedPasswordAndSalt.hashedPassword;
         if (!id.equals(userFromDB.getId()) || !hashedPassword.equals(userFromDB.getHashedPassword())) {
             throw new ApplicationException("Wrong credentials.");
         }
     }
 
-    private static class IdAndPassword {
+    static class IdAndPassword {
         public String id;
         public String password;
 
@@ -224,33 +435,16 @@ public class UserDAO {
         }
     }
 
-    private static class HashedPasswordAndSalt {
+    static class HashedPasswordAndSalt {
         public String hashedPassword;
         public String salt;
 
-        public HashedPasswordAndSalt(MessageDigest digest, String password) {
-            byte[] salt = new byte[16];
-            new SecureRandom().nextBytes(salt);
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            try {
-                stream.write(salt);
-                stream.write(password.getBytes(StandardCharsets.UTF_8));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            this.hashedPassword = new String(Base64.getEncoder().encode(digest.digest(stream.toByteArray())), StandardCharsets.UTF_8);
-            this.salt = new String(Base64.getEncoder().encode(salt), StandardCharsets.UTF_8);
+        public HashedPasswordAndSalt(PasswordHasher passwordHasher, String password) {
+            this(passwordHasher, password, passwordHasher.newSalt());
         }
 
-        public HashedPasswordAndSalt(MessageDigest digest, String password, String salt) {
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            try {
-                stream.write(Base64.getDecoder().decode(salt));
-                stream.write(password.getBytes(StandardCharsets.UTF_8));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            this.hashedPassword = new String(Base64.getEncoder().encode(digest.digest(stream.toByteArray())), StandardCharsets.UTF_8);
+        public HashedPasswordAndSalt(PasswordHasher passwordHasher, String password, String salt) {
+            this.hashedPassword = passwordHasher.hash(password, salt);
             this.salt = salt;
         }
     }
@@ -0,0 +1,42 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Users sorted by normalized name, for prefix searches in O(log n + results).
+// Reads need no locking. Entries only hold id and name to keep the footprint small.
+// The index lives in one process and only sees the writes made there, so it assumes a single application node.
+public class UserNameIndex {
+    private final ConcurrentSkipListMap<String, User> usersByNormalizedName = new ConcurrentSkipListMap<>();
+
+    public void put(String id, String name) {
+        usersByNormalizedName.put(User.getNormalizedName(name), new User(id, null, name, null));
+    }
+
+    public void remove(String id, String name) {
+        usersByNormalizedName.computeIfPresent(User.getNormalizedName(name),
+                (normalizedName, user) -> user.getId().equals(id) ? null : user);
+    }
+
+    public List<User> search(String normalizedPrefix, int limit) {
+        List<User> users = new ArrayList<>();
+        for (Map.Entry<String, User> entry : usersByNormalizedName.tailMap(normalizedPrefix, true).entrySet()) {
+            if (users.size() == limit || !entry.getKey().startsWith(normalizedPrefix)) {
+                break;
+            }
+            User user = entry.getValue();
+            users.add(new User(user.getId(), null, user.getName(), null));
+        }
+        return users;
+    }
+
+    public void clear() {
+        usersByNormalizedName.clear();
+    }
+
+    public int size() {
+        return usersByNormalizedName.size();
+    }
+}
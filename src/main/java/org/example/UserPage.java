@@ -0,0 +1,41 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+public class UserPage {
+    private List<User> users;
+    private String nextCursor;
+
+    public UserPage(@JsonProperty("users") List<User> users,
+                    @JsonProperty("nextCursor") String nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<User> users) {
+        this.users = users;
+    }
+
+    // Null on the last page.
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return "UserPage{" +
+                "users=" + users +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+}
@@ -2,13 +2,16 @@ package org.example;
 
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.StreamingOutput;
 
 import java.util.Base64;
 import java.util.List;
@@ -28,8 +31,14 @@ public class UserResource {
 
     @GET
     @Path("get-all")
-    public List<User> getAll() {
-        return userDAO.getAllAppUsers();
+    public StreamingOutput getAll() {
+        return userDAO::writeAllAppUsers;
+    }
+
+    @GET
+    @Path("get-page")
+    public UserPage getPage(@QueryParam("cursor") String cursor, @QueryParam("limit") @DefaultValue("" + UserDAO.DEFAULT_PAGE_SIZE) int limit) {
+        return userDAO.getAppUsersPage(cursor, limit);
     }
 
     @GET
@@ -46,6 +55,14 @@ public class UserResource {
         return user;
     }
 
+    @POST
+    @Idempotent
+    @Path("login")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String login(@HeaderParam("Authorization") String auth) throws ApplicationException {
+        return userDAO.login(auth);
+    }
+
     @GET
     @Path("get-by-name/{name}")
     @Produces(MediaType.TEXT_PLAIN)
@@ -54,7 +71,14 @@ public class UserResource {
         return userDAO.getUserIdByName(name);
     }
 
+    @GET
+    @Path("search")
+    public List<User> searchUsersByName(@QueryParam("prefix") String prefix, @QueryParam("limit") @DefaultValue("10") int limit) throws ApplicationException {
+        return userDAO.searchUsersByName(prefix, limit);
+    }
+
     @POST
+    @Idempotent
     @Path("add")
     public User addUser(User user) {
         System.out.println("post " + user);
@@ -62,6 +86,7 @@ public class UserResource {
     }
 
     @POST
+    @Idempotent
     @Path("update/{id}")
     public User updateUser(@PathParam("id") String id, @HeaderParam("Authorization") String auth, User user) {
         if (!id.equals(user.getId())) {
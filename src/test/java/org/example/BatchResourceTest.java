@@ -0,0 +1,180 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class BatchResourceTest extends TestWithServer {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private UserDAO userDAO;
+    private ShoppingListDAO shoppingListDAO;
+    private User john;
+    private String auth;
+    private String shoppingListId;
+
+    @BeforeAll
+    @Override
+    public void beforeAll() {
+        super.beforeAll();
+        shoppingListDAO = new ShoppingListDAO(dslContext);
+        userDAO = new UserDAO(dslContext, new SessionTokens(), shoppingListDAO);
+    }
+
+    @BeforeEach
+    @Override
+    public void beforeEach() {
+        super.beforeEach();
+        john = userDAO.addUser(new User("", "", "John", "johns-password"));
+        auth = UserDAOTest.makeAuth(john.getId(), "johns-password");
+        shoppingListId = shoppingListDAO.addShoppingList(john, new ShoppingList("", "", "John's shopping list", "")).getId();
+        shoppingListDAO.addShoppingListItem(john, shoppingListId, new ShoppingListItem("", "", "Milk", "", "", "", ""));
+    }
+
+    @Test
+    public void testResultsHaveTheOrderOfTheRequests() throws Exception {
+        JsonNode responses = batch(auth,
+                "GET", "user/get/" + john.getId(),
+                "GET", "shopping-list/get-own",
+                "GET", "shopping-list/get-enriched/" + shoppingListId,
+                "GET", "shopping-list/get-changes/" + shoppingListId + "?since=0");
+
+        assertThat(statuses(responses)).containsExactly(200, 200, 200, 200);
+        assertThat(responses.get(0).get("body").get("name").asText()).isEqualTo("John");
+        assertThat(responses.get(1).get("body").get(0).get("id").asText()).isEqualTo(shoppingListId);
+        assertThat(responses.get(2).get("body").get("items").get(0).get("name").asText()).isEqualTo("Milk");
+        assertThat(responses.get(3).get("body").get("revision").asLong()).isEqualTo(1);
+    }
+
+    @Test
+    public void testBodiesAreTheEntitiesOfTheSingleEndpoints() throws Exception {
+        List<String> paths = List.of("shopping-list/get", "shopping-list/get/" + shoppingListId, "shopping-list/get-own",
+                "shopping-list/get-invitations", "shopping-list/get-invitations-by-shopping-list/" + shoppingListId,
+                "shopping-list/get-enriched/" + shoppingListId, "shopping-list/get-changes/" + shoppingListId,
+                "user/get/" + john.getId());
+        List<String> methodsAndPaths = new ArrayList<>();
+        paths.forEach(path -> {
+            methodsAndPaths.add("GET");
+            methodsAndPaths.add(path);
+        });
+
+        JsonNode responses = batch(auth, methodsAndPaths.toArray(new String[0]));
+
+        for (int i = 0; i < paths.size(); i++) {
+            HttpResponse<String> single = send(request(paths.get(i), auth).GET());
+            assertThat(single.statusCode()).isEqualTo(200);
+            assertThat(responses.get(i).get("status").asInt()).as(paths.get(i)).isEqualTo(200);
+            assertThat(responses.get(i).get("body")).as(paths.get(i)).isEqualTo(objectMapper.readTree(single.body()));
+        }
+    }
+
+    @Test
+    public void testFailedOperationsGetTheirOwnStatus() throws Exception {
+        JsonNode responses = batch(auth,
+                "GET", "shopping-list/get-enriched/unknown-id",
+                "GET", "shopping-list/get-enriched/" + shoppingListId,
+                "POST", "shopping-list/add",
+                "GET", "shopping-list/unknown-operation",
+                "GET", "shopping-list/get-enriched/" + shoppingListId + "/too-long",
+                "GET", "shopping-list/get-changes/" + shoppingListId + "?since=not-a-number",
+                "GET", "user/get-all");
+
+        assertThat(statuses(responses)).containsExactly(400, 200, 405, 404, 404, 400, 404);
+        assertThat(responses.get(0).get("body").asText()).isEqualTo("ShoppingList not found.");
+        assertThat(responses.get(2).get("body").asText()).isEqualTo("Only GET operations can be batched.");
+        assertThat(responses.get(3).get("body").asText()).isEqualTo("Unknown operation.");
+        assertThat(responses.get(5).get("body").asText()).isEqualTo("Invalid query parameter.");
+    }
+
+    @Test
+    public void testOperationsOfOtherUsersListsAreNotFound() throws Exception {
+        User joe = userDAO.addUser(new User("", "", "Joe", "joes-password"));
+
+        JsonNode responses = batch(UserDAOTest.makeAuth(joe.getId(), "joes-password"),
+                "GET", "shopping-list/get-enriched/" + shoppingListId,
+                "GET", "shopping-list/get");
+
+        assertThat(statuses(responses)).containsExactly(400, 200);
+        assertThat(responses.get(1).get("body")).isEmpty();
+    }
+
+    @Test
+    public void testCallerIsAuthenticatedOnceForTheWholeBatch() throws Exception {
+        batch(auth, "GET", "shopping-list/get");
+        long authentications = getAuthentications();
+
+        batch(auth,
+                "GET", "shopping-list/get",
+                "GET", "shopping-list/get-own",
+                "GET", "shopping-list/get-invitations",
+                "GET", "shopping-list/get-enriched/" + shoppingListId);
+
+        assertThat(getAuthentications() - authentications).isEqualTo(1);
+    }
+
+    @Test
+    public void testWrongCredentialsFailTheWholeBatch() throws Exception {
+        HttpResponse<String> response = send(batchRequest(UserDAOTest.makeAuth(john.getId(), "wrong-password"),
+                "GET", "shopping-list/get"));
+
+        assertThat(response.statusCode()).isEqualTo(400);
+    }
+
+    @Test
+    public void testBatchesMustHoldOneToMaxRequests() throws Exception {
+        String[] tooMany = new String[2 * (BatchResource.MAX_BATCH_REQUESTS + 1)];
+        for (int i = 0; i < tooMany.length; i += 2) {
+            tooMany[i] = "GET";
+            tooMany[i + 1] = "shopping-list/get";
+        }
+
+        assertThat(send(batchRequest(auth)).statusCode()).isEqualTo(400);
+        assertThat(send(batchRequest(auth, tooMany)).statusCode()).isEqualTo(400);
+    }
+
+    private JsonNode batch(String auth, String... methodsAndPaths) throws Exception {
+        HttpResponse<String> response = send(batchRequest(auth, methodsAndPaths));
+        assertThat(response.statusCode()).isEqualTo(200);
+        JsonNode responses = objectMapper.readTree(response.body());
+        assertThat(responses).hasSize(methodsAndPaths.length / 2);
+        return responses;
+    }
+
+    private HttpRequest.Builder batchRequest(String auth, String... methodsAndPaths) throws Exception {
+        List<BatchRequest> requests = new ArrayList<>();
+        for (int i = 0; i < methodsAndPaths.length; i += 2) {
+            requests.add(new BatchRequest(methodsAndPaths[i], methodsAndPaths[i + 1]));
+        }
+        return request("batch", auth)
+                .header("Content-Type", "application/json")
+                .POST(json(objectMapper.writeValueAsString(requests)));
+    }
+
+    private static List<Integer> statuses(JsonNode responses) {
+        List<Integer> statuses = new ArrayList<>();
+        responses.forEach(response -> statuses.add(response.get("status").asInt()));
+        return statuses;
+    }
+
+    // Every authentication with a password looks up the authentication cache once, whether it hits or not.
+    private long getAuthentications() throws Exception {
+        long authentications = 0;
+        for (String line : send(request("metrics", null).GET()).body().split("\n")) {
+            if (line.startsWith("authentication_cache_hits_total ") || line.startsWith("authentication_cache_misses_total ")) {
+                authentications += (long) Double.parseDouble(line.substring(line.indexOf(' ') + 1));
+            }
+        }
+        return authentications;
+    }
+}
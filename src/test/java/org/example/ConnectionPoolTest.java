@@ -0,0 +1,57 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConnectionPoolTest {
+
+    @Test
+    public void testSettingsAreReadFromTheEnvironment() {
+        Map<String, String> env = Map.of(
+                "DB_POOL_SIZE", "20",
+                "DB_POOL_ACQUIRE_TIMEOUT_MS", "250",
+                "DB_POOL_MAX_LIFETIME_MS", "600000");
+
+        assertThat(ConnectionPool.getPoolSize(env::get)).isEqualTo(20);
+        assertThat(ConnectionPool.getAcquireTimeoutMs(env::get)).isEqualTo(250);
+        assertThat(ConnectionPool.getMaxLifetimeMs(env::get)).isEqualTo(600000);
+    }
+
+    @Test
+    public void testMissingSettingsUseTheDefaults() {
+        Map<String, String> env = Map.of();
+
+        assertThat(ConnectionPool.getPoolSize(env::get)).isEqualTo(10);
+        assertThat(ConnectionPool.getAcquireTimeoutMs(env::get)).isEqualTo(5000);
+        assertThat(ConnectionPool.getMaxLifetimeMs(env::get)).isEqualTo(1800000);
+    }
+
+    @Test
+    public void testInvalidSettingsAreRejectedWithTheirName() {
+        Map<String, String> env = Map.of(
+                "DB_POOL_SIZE", "ten",
+                "DB_POOL_ACQUIRE_TIMEOUT_MS", "-1",
+                "DB_POOL_MAX_LIFETIME_MS", "");
+
+        assertThatThrownBy(() -> ConnectionPool.getPoolSize(env::get))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("DB_POOL_SIZE must be a positive whole number, but is 'ten'.");
+        assertThatThrownBy(() -> ConnectionPool.getAcquireTimeoutMs(env::get))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("DB_POOL_ACQUIRE_TIMEOUT_MS");
+        assertThatThrownBy(() -> ConnectionPool.getMaxLifetimeMs(env::get))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("DB_POOL_MAX_LIFETIME_MS");
+    }
+
+    @Test
+    public void testPoolSizeMustFitAnInt() {
+        Map<String, String> env = Map.of("DB_POOL_SIZE", "3000000000");
+
+        assertThatThrownBy(() -> ConnectionPool.getPoolSize(env::get)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,45 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// Parsing the Authorization header and hashing the password, the two steps of an authentication that misses the cache.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CredentialsBenchmark {
+
+    private final PasswordHasher passwordHasher = new PasswordHasher();
+    private final String salt = passwordHasher.newSalt();
+    private final String auth = "Basic " + Base64.getEncoder()
+            .encodeToString("0b3f8e5c-6f1a-4c7e-9d2b-5a4e3c2b1a09:johns-password".getBytes(StandardCharsets.UTF_8));
+
+    @Benchmark
+    public UserDAO.IdAndPassword parseIdAndPassword() {
+        return new UserDAO.IdAndPassword(auth);
+    }
+
+    @Benchmark
+    public UserDAO.HashedPasswordAndSalt hashPassword() {
+        return new UserDAO.HashedPasswordAndSalt(passwordHasher, "johns-password", salt);
+    }
+
+    @Benchmark
+    public UserDAO.HashedPasswordAndSalt hashPasswordWithNewSalt() {
+        return new UserDAO.HashedPasswordAndSalt(passwordHasher, "johns-password");
+    }
+}
@@ -0,0 +1,299 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.InsertValuesStepN;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.table;
+
+// Writes users, shopping lists, authorizations and items straight into the tables of the Migrator schema with multi-row
+// inserts, which is orders of magnitude faster than going through the DAOs. The same seed and parameters always
+// produce the same rows, ids included, so benchmark runs against generated data are comparable.
+//
+// Every user has the password PASSWORD. A list's owner is drawn uniformly. Its members are drawn from the
+// communitySize users following the owner, so users share many lists with the same people. Item counts follow an
+// exponential distribution with mean meanItems, except for a share of longTailRatio lists with between maxItems / 2
+// and maxItems items.
+//
+// Arguments are name=value pairs, for example: seed=42 users=1000000 lists=300000 meanItems=20 longTailRatio=0.001
+// maxItems=5000 meanMembers=3 communitySize=50 acceptedRatio=0.8 boughtRatio=0.3
+// Writes to the database given by GENERATOR_DB_URL, GENERATOR_DB_USERNAME and GENERATOR_DB_PASSWORD, which must be
+// empty or migrated without data.
+public class DatasetGenerator {
+
+    public static final String PASSWORD = "generated-password";
+
+    private static final int ROWS_PER_INSERT = 1000;
+    private static final int SALT_LENGTH = 16;
+    private static final long USER = 1;
+    private static final long SHOPPING_LIST = 2;
+    private static final long ITEM = 3;
+    private static final long SALT = 4;
+    private static final long USER_VERSION = 5;
+    private static final long SHOPPING_LIST_VERSION = 6;
+    private static final long ITEM_VERSION = 7;
+    private static final String[] ITEM_NAMES = {"Milk", "Bread", "Butter", "Eggs", "Cheese", "Apples", "Bananas", "Tomatoes",
+            "Potatoes", "Onions", "Rice", "Pasta", "Coffee", "Tea", "Sugar", "Flour", "Olive oil", "Yoghurt", "Chicken", "Soap"};
+
+    private final DSLContext dslContext;
+    private final long seed;
+    private final int users;
+    private final int lists;
+    private final double meanItems;
+    private final double longTailRatio;
+    private final int maxItems;
+    private final double meanMembers;
+    private final int communitySize;
+    private final double acceptedRatio;
+    private final double boughtRatio;
+    private final PasswordHasher passwordHasher = new PasswordHasher();
+
+    public DatasetGenerator(DSLContext dslContext, long seed, int users, int lists, double meanItems, double longTailRatio, int maxItems,
+                            double meanMembers, int communitySize, double acceptedRatio, double boughtRatio) {
+        if (users < 1 || lists < 0 || maxItems < 0 || communitySize < 0) {
+            throw new IllegalArgumentException("Invalid dataset size.");
+        }
+        this.dslContext = dslContext;
+        this.seed = seed;
+        this.users = users;
+        this.lists = lists;
+        this.meanItems = meanItems;
+        this.longTailRatio = longTailRatio;
+        this.maxItems = maxItems;
+        this.meanMembers = meanMembers;
+        this.communitySize = Math.min(communitySize, users - 1);
+        this.acceptedRatio = acceptedRatio;
+        this.boughtRatio = boughtRatio;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String arg : args) {
+            String[] nameAndValue = arg.split("=", 2);
+            if (nameAndValue.length != 2) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg + ".");
+            }
+            parameters.put(nameAndValue[0], nameAndValue[1]);
+        }
+        try (ConnectionPool connectionPool = new ConnectionPool(System.getenv("GENERATOR_DB_URL"),
+                System.getenv("GENERATOR_DB_USERNAME"), System.getenv("GENERATOR_DB_PASSWORD"))) {
+            DSLContext dslContext = DSL.using(connectionPool.getDataSource(), SQLDialect.POSTGRES);
+            new Migrator(dslContext).migrate();
+            DatasetGenerator generator = new DatasetGenerator(dslContext,
+                    Long.parseLong(parameters.getOrDefault("seed", "42")),
+                    Integer.parseInt(parameters.getOrDefault("users", "1000000")),
+                    Integer.parseInt(parameters.getOrDefault("lists", "300000")),
+                    Double.parseDouble(parameters.getOrDefault("meanItems", "20")),
+                    Double.parseDouble(parameters.getOrDefault("longTailRatio", "0.001")),
+                    Integer.parseInt(parameters.getOrDefault("maxItems", "5000")),
+                    Double.parseDouble(parameters.getOrDefault("meanMembers", "3")),
+                    Integer.parseInt(parameters.getOrDefault("communitySize", "50")),
+                    Double.parseDouble(parameters.getOrDefault("acceptedRatio", "0.8")),
+                    Double.parseDouble(parameters.getOrDefault("boughtRatio", "0.3")));
+            long start = System.nanoTime();
+            generator.generate();
+            System.out.printf("generated in %d s%n", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        }
+    }
+
+    public void generate() {
+        generateUsers();
+        generateShoppingLists();
+    }
+
+    public String getUserId(int user) {
+        return getId(USER, user);
+    }
+
+    public String getShoppingListId(int list) {
+        return getId(SHOPPING_LIST, list);
+    }
+
+    // Every list draws from its own random generator, so the owner can be looked up without generating the list again.
+    public int getOwner(int list) {
+        return newListRandom(list).nextInt(users);
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getShoppingLists() {
+        return lists;
+    }
+
+    private void generateUsers() {
+        BulkInsert userAccounts = new BulkInsert(dslContext, "user_account", null,
+                "id", "version", "name", "normalized_name", "hashed_password", "salt");
+        for (int user = 0; user < users; user++) {
+            String name = getUserName(user);
+            String salt = getSalt(user);
+            userAccounts.add(getUserId(user), getId(USER_VERSION, user), name, User.getNormalizedName(name),
+                    passwordHasher.hash(PASSWORD, salt), salt);
+        }
+        userAccounts.flush();
+    }
+
+    private void generateShoppingLists() {
+        BulkInsert shoppingLists = new BulkInsert(dslContext, "shopping_list", null,
+                "id", "version", "name", "owner", "revision", "next_sort_order");
+        BulkInsert authorizations = new BulkInsert(dslContext, "shopping_list_authorization", shoppingLists,
+                "shopping_list_id", "user_id", "invitation_accepted", "revision");
+        BulkInsert items = new BulkInsert(dslContext, "shopping_list_item", shoppingLists,
+                "id", "version", "name", "created_by", "modified_by", "bought_by", "state_changed_by", "shopping_list_id", "sort_order", "revision");
+        long itemIndex = 0;
+        for (int list = 0; list < lists; list++) {
+            Random random = newListRandom(list);
+            int owner = random.nextInt(users);
+            String shoppingListId = getShoppingListId(list);
+            Set<Integer> invited = drawMembers(random, owner);
+            List<String> members = new ArrayList<>();
+            members.add(getUserId(owner));
+            List<Object[]> authorizationRows = new ArrayList<>();
+            authorizationRows.add(new Object[]{shoppingListId, getUserId(owner), true, 0L});
+            for (int member : invited) {
+                boolean accepted = random.nextDouble() < acceptedRatio;
+                if (accepted) {
+                    members.add(getUserId(member));
+                }
+                authorizationRows.add(new Object[]{shoppingListId, getUserId(member), accepted, 0L});
+            }
+            int numberOfItems = drawNumberOfItems(random);
+            shoppingLists.add(shoppingListId, getId(SHOPPING_LIST_VERSION, list), "List " + list, getUserId(owner), 0L,
+                    numberOfItems * ShoppingListDAO.SORT_ORDER_GAP);
+            for (Object[] authorizationRow : authorizationRows) {
+                authorizations.add(authorizationRow);
+            }
+            for (int i = 0; i < numberOfItems; i++) {
+                String createdBy = members.get(random.nextInt(members.size()));
+                String boughtBy = random.nextDouble() < boughtRatio ? members.get(random.nextInt(members.size())) : null;
+                items.add(getId(ITEM, itemIndex), getId(ITEM_VERSION, itemIndex), ITEM_NAMES[random.nextInt(ITEM_NAMES.length)],
+                        createdBy, createdBy, boughtBy, boughtBy == null ? createdBy : boughtBy, shoppingListId,
+                        i * ShoppingListDAO.SORT_ORDER_GAP, 0L);
+                itemIndex++;
+            }
+        }
+        shoppingLists.flush();
+        authorizations.flush();
+        items.flush();
+    }
+
+    private Set<Integer> drawMembers(Random random, int owner) {
+        Set<Integer> members = new LinkedHashSet<>();
+        if (communitySize == 0) {
+            return members;
+        }
+        int numberOfMembers = (int) Math.min(communitySize, drawExponential(random, meanMembers));
+        while (members.size() < numberOfMembers) {
+            members.add((owner + 1 + random.nextInt(communitySize)) % users);
+        }
+        return members;
+    }
+
+    private int drawNumberOfItems(Random random) {
+        if (random.nextDouble() < longTailRatio) {
+            return maxItems / 2 + random.nextInt(maxItems - maxItems / 2 + 1);
+        }
+        return (int) Math.min(maxItems, drawExponential(random, meanItems));
+    }
+
+    private static double drawExponential(Random random, double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    private Random newListRandom(int list) {
+        return new Random(mix(seed ^ mix(SHOPPING_LIST * 31 + list)));
+    }
+
+    // User names may only contain letters, so the index is written in base 26.
+    private static String getUserName(int user) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + user % 26));
+            user /= 26;
+        } while (user > 0);
+        return "user" + name;
+    }
+
+    private String getSalt(int user) {
+        ByteBuffer salt = ByteBuffer.allocate(SALT_LENGTH);
+        salt.putLong(mix(seed ^ mix(SALT * 31 + user)));
+        salt.putLong(mix(~seed ^ mix(SALT * 37 + user)));
+        return Base64.getEncoder().encodeToString(salt.array());
+    }
+
+    // A random-looking version 4 UUID that depends only on the seed, the kind of entity and its index, so ids do not
+    // have to be kept in memory and are inserted in random order like the ones the application creates.
+    private String getId(long kind, long index) {
+        long mostSignificantBits = mix(seed ^ mix(kind * 31 + index));
+        long leastSignificantBits = mix(~seed ^ mix(kind * 37 + index));
+        mostSignificantBits = (mostSignificantBits & ~0xF000L) | 0x4000L;
+        leastSignificantBits = (leastSignificantBits & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSignificantBits, leastSignificantBits).toString();
+    }
+
+    // The finalizer of SplitMix64.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Collects rows and inserts them with one statement per ROWS_PER_INSERT rows. Rows of the parent table are flushed
+    // first, so foreign keys are satisfied.
+    private static class BulkInsert {
+        private final DSLContext dslContext;
+        private final String table;
+        private final BulkInsert parent;
+        private final Field<?>[] fields;
+        private final List<Object[]> rows = new ArrayList<>();
+
+        private BulkInsert(DSLContext dslContext, String table, BulkInsert parent, String... columns) {
+            this.dslContext = dslContext;
+            this.table = table;
+            this.parent = parent;
+            this.fields = new Field<?>[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                fields[i] = field(columns[i]);
+            }
+        }
+
+        private void add(Object... values) {
+            rows.add(values);
+            if (rows.size() >= ROWS_PER_INSERT) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (parent != null) {
+                parent.flush();
+            }
+            if (rows.isEmpty()) {
+                return;
+            }
+            InsertValuesStepN<Record> insert = dslContext.insertInto(table(table)).columns(fields);
+            for (Object[] row : rows) {
+                insert = insert.values(row);
+            }
+            insert.execute();
+            rows.clear();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.table;
+
+// Compares the single-statement getEnrichedShoppingList with the four sequential queries it replaced. Both run without
+// the enriched shopping list cache; cached measures the cache hit for comparison.
+// SampleTime mode reports p50 and p99 next to the average. Runs against an in-memory H2 database unless
+// BENCHMARK_DB_URL (plus BENCHMARK_DB_USERNAME and BENCHMARK_DB_PASSWORD) points to a scratch Postgres database,
+// whose tables are dropped and recreated.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnrichedShoppingListBenchmark {
+
+    private static final User OWNER = new User("id-owner", "version-owner", "Owner", null);
+
+    @Param({"10", "100", "1000"})
+    public int numberOfItems;
+
+    private Connection connection;
+    private DSLContext dslContext;
+    private ShoppingListDAO shoppingListDAO;
+    private ShoppingListDAO cachingShoppingListDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        String dbUrl = System.getenv("BENCHMARK_DB_URL");
+        if (dbUrl == null) {
+            connection = DriverManager.getConnection("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE;", "sa", "");
+        } else {
+            connection = DriverManager.getConnection(dbUrl, System.getenv("BENCHMARK_DB_USERNAME"), System.getenv("BENCHMARK_DB_PASSWORD"));
+        }
+        dslContext = DSL.using(connection, SQLDialect.POSTGRES);
+        Migrator migrator = new Migrator(dslContext);
+        migrator.reset();
+        migrator.migrate();
+        shoppingListDAO = new ShoppingListDAO(dslContext, 0);
+        cachingShoppingListDAO = new ShoppingListDAO(dslContext);
+
+        for (String name : List.of("Owner", "Member", "Invited")) {
+            dslContext.insertInto(table("user_account"))
+                    .columns(field("id"), field("version"), field("name"), field("normalized_name"), field("hashed_password"), field("salt"))
+                    .values("id-" + name.toLowerCase(), "version-" + name.toLowerCase(), name, name.toLowerCase(), "hashed-password", "salt")
+                    .execute();
+        }
+        dslContext.insertInto(table("shopping_list"))
+                .columns(field("id"), field("version"), field("name"), field("owner"))
+                .values("id-list", "version-list", "list", "id-owner")
+                .execute();
+        dslContext.insertInto(table("shopping_list_authorization"))
+                .columns(field("shopping_list_id"), field("user_id"), field("invitation_accepted"))
+                .values("id-list", "id-owner", true)
+                .values("id-list", "id-member", true)
+                .values("id-list", "id-invited", false)
+                .execute();
+        for (int i = 0; i < numberOfItems; i++) {
+            dslContext.insertInto(table("shopping_list_item"))
+                    .columns(field("id"), field("version"), field("name"), field("created_by"), field("modified_by"),
+                            field("bought_by"), field("state_changed_by"), field("shopping_list_id"), field("sort_order"))
+                    .values("id-item-" + i, "version-item-" + i, "item " + i, "id-owner", "id-owner",
+                            i % 3 == 0 ? "id-member" : null, "id-owner", "id-list", i)
+                    .execute();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        shoppingListDAO.close();
+        cachingShoppingListDAO.close();
+        new Migrator(dslContext).reset();
+        connection.close();
+    }
+
+    @Benchmark
+    public EnrichedShoppingList singleQuery() {
+        return shoppingListDAO.getEnrichedShoppingList(OWNER, "id-list");
+    }
+
+    @Benchmark
+    public EnrichedShoppingList cached() {
+        return cachingShoppingListDAO.getEnrichedShoppingList(OWNER, "id-list");
+    }
+
+    @Benchmark
+    public EnrichedShoppingList fourQueries() {
+        ShoppingList shoppingList = shoppingListDAO.getShoppingList(OWNER, "id-list");
+        List<User> members = dslContext.select()
+                .from("shopping_list_authorization")
+                .join("user_account")
+                .on(field("shopping_list_authorization.user_id").eq(field("user_account.id")))
+                .where(field("shopping_list_id").eq("id-list"))
+                .and(field("invitation_accepted").eq(true))
+                .fetch(new UserDAO.UserMapper())
+                .stream().map(userFromDb -> new User(userFromDb.getId(), userFromDb.getVersion(), userFromDb.getName(), null))
+                .collect(Collectors.toList());
+        List<User> invitedUsers = dslContext.select()
+                .from("shopping_list_authorization")
+                .join("user_account")
+                .on(field("shopping_list_authorization.user_id").eq(field("user_account.id")))
+                .where(field("shopping_list_id").eq("id-list"))
+                .and(field("invitation_accepted").eq(false))
+                .fetch(new UserDAO.UserMapper())
+                .stream().map(userFromDb -> new User(userFromDb.getId(), userFromDb.getVersion(), userFromDb.getName(), null))
+                .collect(Collectors.toList());
+        List<ShoppingListItem> items = dslContext.select()
+                .from("shopping_list_item")
+                .where(field("shopping_list_id").eq("id-list"))
+                .orderBy(field("sort_order"))
+                .fetch(new ShoppingListDAO.ShoppingListItemMapper());
+        return new EnrichedShoppingList(
+                shoppingList.getId(),
+                shoppingList.getVersion(),
+                shoppingList.getName(),
+                shoppingList.getOwner(),
+                members,
+                invitedUsers,
+                items
+        );
+    }
+}
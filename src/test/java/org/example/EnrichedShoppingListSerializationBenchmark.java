@@ -0,0 +1,57 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Serializes the response of get-enriched. The output is discarded, as the server streams it to the client instead
+// of buffering it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnrichedShoppingListSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int numberOfItems;
+
+    private final ObjectWriter objectWriter = new ObjectMapper().writerFor(EnrichedShoppingList.class);
+    private EnrichedShoppingList enrichedShoppingList;
+
+    @Setup
+    public void setUp() {
+        List<User> members = List.of(
+                new User("id-owner", "version-owner", "Owner", null),
+                new User("id-member", "version-member", "Member", null));
+        List<User> invitedUsers = List.of(new User("id-invited", "version-invited", "Invited", null));
+        List<ShoppingListItem> items = new ArrayList<>();
+        for (int i = 0; i < numberOfItems; i++) {
+            items.add(new ShoppingListItem("id-item-" + i, "version-item-" + i, "item " + i, "id-owner", "id-owner",
+                    i % 3 == 0 ? "id-member" : null, "id-owner"));
+        }
+        enrichedShoppingList = new EnrichedShoppingList("id-list", "version-list", "list", "id-owner", members, invitedUsers, items);
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        objectWriter.writeValue(OutputStream.nullOutputStream(), enrichedShoppingList);
+    }
+}
@@ -0,0 +1,185 @@
+package org.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jooq.impl.DSL.field;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class IdempotencyFilterTest extends TestWithServer {
+
+    private static final String MILK = "{\"id\":\"\",\"version\":\"\",\"name\":\"Milk\",\"createdBy\":\"\",\"modifiedBy\":\"\",\"boughtBy\":\"\",\"stateChangedBy\":\"\"}";
+    private static final String BREAD = "{\"id\":\"\",\"version\":\"\",\"name\":\"Bread\",\"createdBy\":\"\",\"modifiedBy\":\"\",\"boughtBy\":\"\",\"stateChangedBy\":\"\"}";
+
+    private UserDAO userDAO;
+    private ShoppingListDAO shoppingListDAO;
+    private final ControlledShoppingListEvents shoppingListEvents = new ControlledShoppingListEvents();
+    private String auth;
+    private String shoppingListId;
+
+    @BeforeAll
+    @Override
+    public void beforeAll() {
+        super.beforeAll();
+        shoppingListDAO = new ShoppingListDAO(dslContext);
+        userDAO = new UserDAO(dslContext, new SessionTokens(), shoppingListDAO);
+    }
+
+    @BeforeEach
+    @Override
+    public void beforeEach() {
+        super.beforeEach();
+        shoppingListEvents.reset();
+        User john = userDAO.addUser(new User("", "", "John", "johns-password"));
+        auth = UserDAOTest.makeAuth(john.getId(), "johns-password");
+        shoppingListId = shoppingListDAO.addShoppingList(john, new ShoppingList("", "", "John's shopping list", "")).getId();
+    }
+
+    @Override
+    protected ShoppingListEvents createShoppingListEvents() {
+        return shoppingListEvents;
+    }
+
+    @Test
+    public void testRetryGetsTheStoredResponse() throws Exception {
+        HttpResponse<String> first = send(addItem("key-1", MILK));
+        HttpResponse<String> retry = send(addItem("key-1", MILK));
+
+        assertThat(first.statusCode()).isEqualTo(200);
+        assertThat(first.headers().firstValue(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEmpty();
+        assertThat(retry.statusCode()).isEqualTo(200);
+        assertThat(retry.headers().firstValue(IdempotencyFilter.IDEMPOTENT_REPLAYED)).contains("true");
+        assertThat(retry.body()).isEqualTo(first.body());
+        assertThat(getItemNames()).containsExactly("Milk");
+    }
+
+    @Test
+    public void testRequestsWithoutKeyOrWithOtherKeysAreExecutedEachTime() throws Exception {
+        send(addItem(null, MILK));
+        send(addItem(null, MILK));
+        send(addItem("key-1", MILK));
+        send(addItem("key-2", MILK));
+
+        assertThat(getItemNames()).containsExactly("Milk", "Milk", "Milk", "Milk");
+    }
+
+    @Test
+    public void testKeyReusedWithADifferentBodyIsRejected() throws Exception {
+        HttpResponse<String> first = send(addItem("key-1", MILK));
+        HttpResponse<String> reused = send(addItem("key-1", BREAD));
+
+        assertThat(first.statusCode()).isEqualTo(200);
+        assertThat(reused.statusCode()).isEqualTo(422);
+        assertThat(reused.body()).isEqualTo("The Idempotency-Key was already used for a request with a different body.");
+        assertThat(getItemNames()).containsExactly("Milk");
+    }
+
+    @Test
+    public void testClientErrorsAreStored() throws Exception {
+        String emptyName = MILK.replace("Milk", "");
+        HttpResponse<String> first = send(addItem("key-1", emptyName));
+        HttpResponse<String> retry = send(addItem("key-1", emptyName));
+
+        assertThat(first.statusCode()).isEqualTo(400);
+        assertThat(retry.statusCode()).isEqualTo(400);
+        assertThat(retry.headers().firstValue(IdempotencyFilter.IDEMPOTENT_REPLAYED)).contains("true");
+        assertThat(retry.body()).isEqualTo(first.body());
+    }
+
+    @Test
+    public void testConcurrentDuplicateWaitsForTheFirstExecution() throws Exception {
+        shoppingListEvents.blockAfterCommit();
+        CompletableFuture<HttpResponse<String>> first = sendAsync(addItem("key-1", MILK));
+        assertThat(shoppingListEvents.committed.await(10, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<HttpResponse<String>> duplicate = sendAsync(addItem("key-1", MILK));
+        Thread.sleep(300);
+        assertThat(duplicate).isNotDone();
+        shoppingListEvents.release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+        assertThat(duplicate.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+        assertThat(duplicate.get().headers().firstValue(IdempotencyFilter.IDEMPOTENT_REPLAYED)).contains("true");
+        assertThat(duplicate.get().body()).isEqualTo(first.get().body());
+        assertThat(getItemNames()).containsExactly("Milk");
+    }
+
+    @Test
+    public void testServerErrorsAreNotStored() throws Exception {
+        shoppingListEvents.failAfterCommit = true;
+        HttpResponse<String> failed = send(addItem("key-1", MILK));
+        shoppingListEvents.failAfterCommit = false;
+        HttpResponse<String> retry = send(addItem("key-1", MILK));
+
+        assertThat(failed.statusCode()).isEqualTo(500);
+        assertThat(retry.statusCode()).isEqualTo(200);
+        assertThat(retry.headers().firstValue(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEmpty();
+        // The failed request had committed before it failed, so the retry adds the item a second time.
+        assertThat(getItemNames()).containsExactly("Milk", "Milk");
+    }
+
+    private HttpRequest.Builder addItem(String idempotencyKey, String item) {
+        HttpRequest.Builder request = request("shopping-list/add-item/" + shoppingListId, auth)
+                .header("Content-Type", "application/json")
+                .POST(json(item));
+        return idempotencyKey == null ? request : request.header(IdempotencyFilter.IDEMPOTENCY_KEY, idempotencyKey);
+    }
+
+    private List<String> getItemNames() {
+        return dslContext.select(field("name"))
+                .from("shopping_list_item")
+                .where(field("shopping_list_id").eq(shoppingListId))
+                .orderBy(field("sort_order"))
+                .fetch(0, String.class);
+    }
+
+    // Runs after the mutation has committed and before the response is written, so it can hold the request there or
+    // let it fail with an error that no exception mapper handles.
+    private static class ControlledShoppingListEvents extends ShoppingListEvents {
+        private volatile CountDownLatch committed;
+        private volatile CountDownLatch release;
+        private volatile boolean failAfterCommit;
+
+        private ControlledShoppingListEvents() {
+            super(Duration.ofHours(1));
+        }
+
+        private void reset() {
+            committed = null;
+            release = null;
+            failAfterCommit = false;
+        }
+
+        private void blockAfterCommit() {
+            committed = new CountDownLatch(1);
+            release = new CountDownLatch(1);
+        }
+
+        @Override
+        public void shoppingListChanged(ShoppingListChange change) {
+            if (failAfterCommit) {
+                throw new AssertionError("Failing after the commit.");
+            }
+            if (release != null) {
+                committed.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.shoppingListChanged(change);
+        }
+    }
+}
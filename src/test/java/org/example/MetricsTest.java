@@ -0,0 +1,57 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsTest {
+
+    private final Metrics metrics = new Metrics();
+
+    @Test
+    public void testRequestLatencyIsReportedByPathAndStatus() {
+        Metrics.RequestLatency requestLatency = metrics.newRequestLatency("GET", "/shopping-list/get-enriched/{shopping-list-id}");
+        for (int i = 1; i <= 100; i++) {
+            requestLatency.record(200, TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        requestLatency.record(400, TimeUnit.MILLISECONDS.toNanos(3));
+
+        String scrape = metrics.scrape();
+
+        String labels = "method=\"GET\",path=\"/shopping-list/get-enriched/{shopping-list-id}\"";
+        assertThat(scrape).contains("# TYPE http_request_duration_seconds summary\n");
+        assertThat(scrape).contains("http_request_duration_seconds_count{" + labels + ",status=\"200\"} 100\n");
+        assertThat(scrape).contains("http_request_duration_seconds_count{" + labels + ",status=\"400\"} 1\n");
+        assertThat(scrape).containsPattern("http_request_duration_seconds\\{" + labels.replace("{", "\\{").replace("}", "\\}")
+                + ",status=\"200\",quantile=\"0.5\"} 0\\.05\\d*\n");
+        assertThat(scrape).containsPattern("http_request_duration_seconds_sum\\{" + labels.replace("{", "\\{").replace("}", "\\}")
+                + ",status=\"200\"} 5\\.0\\d*\n");
+    }
+
+    @Test
+    public void testLatencyAccumulatesAcrossScrapes() {
+        Metrics.RequestLatency requestLatency = metrics.newRequestLatency("POST", "/shopping-list/add");
+        requestLatency.record(200, TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.scrape();
+        requestLatency.record(200, TimeUnit.MILLISECONDS.toNanos(1));
+        requestLatency.record(200, TimeUnit.HOURS.toNanos(1));
+
+        assertThat(metrics.scrape()).contains("http_request_duration_seconds_count{method=\"POST\",path=\"/shopping-list/add\",status=\"200\"} 3\n");
+    }
+
+    @Test
+    public void testGaugesAndCounters() {
+        metrics.addGauge("shopping_list_subscriptions", "Open subscriptions.", () -> 3);
+        metrics.addCounter("cache_hits_total", "Cache hits.", () -> 2.5);
+
+        assertThat(metrics.scrape()).contains(
+                "# HELP shopping_list_subscriptions Open subscriptions.\n"
+                        + "# TYPE shopping_list_subscriptions gauge\n"
+                        + "shopping_list_subscriptions 3\n"
+                        + "# HELP cache_hits_total Cache hits.\n"
+                        + "# TYPE cache_hits_total counter\n"
+                        + "cache_hits_total 2.5\n");
+    }
+}
@@ -0,0 +1,102 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
+import org.jooq.impl.DefaultExecuteListener;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.table;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class MigratorTest extends TestWithDB {
+
+    private final static User JOHN = new User("id-john", "version-john", "John", null);
+
+    private ShoppingList shoppingList;
+
+    @BeforeEach
+    @Override
+    public void beforeEach() {
+        super.beforeEach();
+        dslContext.insertInto(table("user_account"))
+                .columns(field("id"), field("version"), field("name"), field("normalized_name"), field("hashed_password"), field("salt"))
+                .values("id-john", "version-john", "John", "john", "hashed-password-john", "salt-john")
+                .execute();
+        ShoppingListDAO shoppingListDAO = new ShoppingListDAO(dslContext);
+        shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        shoppingListDAO.addShoppingListItem(JOHN, shoppingList.getId(), new ShoppingListItem(null, null, "milk", null, null, null, null));
+    }
+
+    @Test
+    public void testIndexesExist() {
+        List<String> indexNames = dslContext.select(field("index_name"))
+                .from("information_schema.indexes")
+                .fetch(0, String.class);
+        assertThat(indexNames).contains(
+                "idx_shopping_list_authorization_user",
+                "idx_shopping_list_authorization_shopping_list",
+                "idx_shopping_list_item_shopping_list",
+                "idx_shopping_list_owner"
+        );
+    }
+
+    @Test
+    public void testGetShoppingListsUsesIndex() {
+        List<String> plans = explain(shoppingListDAO -> shoppingListDAO.getShoppingLists(JOHN));
+        assertThat(plans).hasSize(1);
+        assertThat(plans.get(0)).contains("idx_shopping_list_authorization_user").doesNotContain("tableScan");
+    }
+
+    @Test
+    public void testIsUserAuthorizedForShoppingListUsesIndex() {
+        List<String> plans = explain(shoppingListDAO -> shoppingListDAO.isUserAuthorizedForShoppingList(JOHN, shoppingList.getId()));
+        assertThat(plans).hasSize(1).noneMatch(plan -> plan.contains("tableScan"));
+    }
+
+    @Test
+    public void testGetMembersUsesIndex() {
+        List<String> plans = explain(shoppingListDAO -> shoppingListDAO.getMembers(shoppingList.getId()));
+        assertThat(plans).hasSize(1);
+        assertThat(plans.get(0)).contains("idx_shopping_list_authorization_shopping_list").doesNotContain("tableScan");
+    }
+
+    @Test
+    public void testGetEnrichedShoppingListUsesIndexes() {
+        List<String> plans = explain(shoppingListDAO -> shoppingListDAO.getEnrichedShoppingList(JOHN, shoppingList.getId()));
+        assertThat(plans).hasSize(2).noneMatch(plan -> plan.contains("tableScan"));
+        assertThat(plans.get(1)).contains("idx_shopping_list_authorization_user", "idx_shopping_list_authorization_shopping_list");
+    }
+
+    @Test
+    public void testGetOwnShoppingListsUsesIndex() {
+        List<String> plans = explain(shoppingListDAO -> shoppingListDAO.getOwnShoppingLists(JOHN));
+        assertThat(plans).hasSize(1).noneMatch(plan -> plan.contains("tableScan"));
+    }
+
+    // Runs the call against a DAO that records its statements with their bind values, and returns the plan of each.
+    private List<String> explain(Consumer<ShoppingListDAO> call) {
+        List<String> statements = new ArrayList<>();
+        DSLContext recordingDslContext = dslContext.configuration()
+                .derive(new DefaultExecuteListenerProvider(new DefaultExecuteListener() {
+                    @Override
+                    public void executeStart(ExecuteContext ctx) {
+                        statements.add(ctx.dsl().renderInlined(ctx.query()));
+                    }
+                })).dsl();
+        call.accept(new ShoppingListDAO(recordingDslContext));
+        List<String> plans = new ArrayList<>();
+        for (String statement : statements) {
+            plans.add(dslContext.fetch("explain " + statement).get(0).get(0, String.class));
+        }
+        return plans;
+    }
+}
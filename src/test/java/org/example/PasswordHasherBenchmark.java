@@ -0,0 +1,61 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasswordHasherBenchmark {
+
+    private final PasswordHasher passwordHasher = new PasswordHasher();
+    private final String salt = passwordHasher.newSalt();
+
+    @Benchmark
+    public String hash() {
+        return passwordHasher.hash("johns-password", salt);
+    }
+
+    @Benchmark
+    public String newSaltAndHash() {
+        return passwordHasher.hash("johns-password", passwordHasher.newSalt());
+    }
+
+    // Runs with 1, 2, 4, ... threads up to the number of cores and prints the speedup against one thread.
+    public static void main(String[] args) throws RunnerException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double singleThreaded = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(PasswordHasherBenchmark.class.getSimpleName() + ".hash$")
+                    .threads(threads)
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            for (RunResult result : results) {
+                double score = result.getPrimaryResult().getScore();
+                if (threads == 1) {
+                    singleThreaded = score;
+                }
+                System.out.printf("threads=%d hashes/sec=%.0f speedup=%.2f%n", threads, score, score / singleThreaded);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PasswordHasherTest {
+
+    private final PasswordHasher passwordHasher = new PasswordHasher();
+
+    @Test
+    public void testHash() {
+        String salt = "abcd";
+        assertThat(passwordHasher.hash("johns-password", salt)).isEqualTo(passwordHasher.hash("johns-password", salt));
+        assertThat(passwordHasher.hash("johns-password", salt)).isNotEqualTo(passwordHasher.hash("joes-password", salt));
+        assertThat(passwordHasher.hash("johns-password", salt)).hasSize(44);
+    }
+
+    @Test
+    public void testNewSaltIsRandom() {
+        assertThat(passwordHasher.newSalt()).hasSize(24).isNotEqualTo(passwordHasher.newSalt());
+    }
+
+    @Test
+    public void testConcurrentHashing() throws Exception {
+        String salt = passwordHasher.newSalt();
+        String expected = passwordHasher.hash("johns-password", salt);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10000; j++) {
+                        if (!expected.equals(passwordHasher.hash("johns-password", salt))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertThat(future.get()).isTrue();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.table;
+
+public class QueryStatisticsTest extends TestWithDB {
+
+    private final List<String> slowQueries = new ArrayList<>();
+
+    @Override
+    @BeforeEach
+    public void beforeEach() {
+        super.beforeEach();
+        slowQueries.clear();
+    }
+
+    private DSLContext instrument(QueryStatistics queryStatistics) {
+        return dslContext.configuration().deriveAppending(new DefaultExecuteListenerProvider(queryStatistics)).dsl();
+    }
+
+    @Test
+    public void testNormalize() {
+        assertThat(QueryStatistics.normalize("select * from t where a = 'it''s' and b in (1, 2, 3) and c = ?"))
+                .isEqualTo("select * from t where a = ? and b in (?...) and c = ?");
+        assertThat(QueryStatistics.normalize("select * from t where b in (?, ?)"))
+                .isEqualTo(QueryStatistics.normalize("select * from t where b in (?, ?, ?, ?)"));
+        assertThat(QueryStatistics.normalize("select t1.x from t1")).isEqualTo("select t1.x from t1");
+    }
+
+    @Test
+    public void testExecutionsAndRowsAreCountedByShape() {
+        QueryStatistics queryStatistics = new QueryStatistics(Long.MAX_VALUE, slowQueries::add);
+        DSLContext ctx = instrument(queryStatistics);
+        for (int i = 0; i < 3; i++) {
+            ctx.insertInto(table("user_account"), field("id"), field("name"), field("hashed_password"), field("salt"))
+                    .values("user-" + i, "User " + i, "password", "salt")
+                    .execute();
+        }
+        ctx.selectFrom(table("user_account")).fetch();
+
+        String insert = QueryStatistics.normalize(ctx.insertInto(table("user_account"), field("id"), field("name"), field("hashed_password"), field("salt"))
+                .values("", "", "", "").getSQL());
+        String select = QueryStatistics.normalize(ctx.selectFrom(table("user_account")).getSQL());
+        assertThat(queryStatistics.getExecutions(insert)).isEqualTo(3);
+        assertThat(queryStatistics.getRows(insert)).isEqualTo(3);
+        assertThat(queryStatistics.getExecutions(select)).isEqualTo(1);
+        assertThat(queryStatistics.getRows(select)).isEqualTo(3);
+        assertThat(slowQueries).isEmpty();
+
+        Metrics metrics = new Metrics();
+        metrics.addCollector(queryStatistics);
+        assertThat(metrics.scrape()).contains("db_query_executions_total{sql=\"" + Metrics.escape(insert) + "\"} 3\n");
+    }
+
+    @Test
+    public void testSlowQueriesAreLoggedWithoutBindValues() {
+        QueryStatistics queryStatistics = new QueryStatistics(0, slowQueries::add);
+        DSLContext ctx = instrument(queryStatistics);
+        ctx.selectFrom(table("user_account")).where(field("salt").eq("secret-salt")).fetch();
+
+        String select = QueryStatistics.normalize(ctx.selectFrom(table("user_account")).where(field("salt").eq("")).getSQL());
+        assertThat(slowQueries).hasSize(1);
+        assertThat(slowQueries.get(0)).endsWith(select);
+        assertThat(slowQueries.get(0)).doesNotContain("secret-salt");
+    }
+
+    @Test
+    public void testQueriesAreCountedPerRequest() {
+        QueryStatistics queryStatistics = new QueryStatistics(Long.MAX_VALUE, slowQueries::add);
+        DSLContext ctx = instrument(queryStatistics);
+        ctx.selectFrom(table("user_account")).fetch();
+
+        queryStatistics.startRequest();
+        ctx.selectFrom(table("user_account")).fetch();
+        ctx.selectFrom(table("shopping_list")).fetch();
+        assertThat(queryStatistics.finishRequest()).isEqualTo(2);
+
+        ctx.selectFrom(table("user_account")).fetch();
+        assertThat(queryStatistics.finishRequest()).isEqualTo(0);
+
+        // The next request on the same thread starts from zero again.
+        queryStatistics.startRequest();
+        ctx.selectFrom(table("shopping_list")).fetch();
+        assertThat(queryStatistics.finishRequest()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,96 @@
+package org.example;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.jooq.impl.DSL.field;
+
+// Maps one record the way the DAOs do for every row they fetch. The records are built in memory, so no database is
+// involved.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordMapperBenchmark {
+
+    private final UserDAO.UserMapper userMapper = new UserDAO.UserMapper();
+    private final ShoppingListDAO.ShoppingListMapper shoppingListMapper = new ShoppingListDAO.ShoppingListMapper();
+    private final ShoppingListDAO.ShoppingListItemMapper shoppingListItemMapper = new ShoppingListDAO.ShoppingListItemMapper();
+
+    private Record userRecord;
+    private Record shoppingListRecord;
+    private Record shoppingListItemRecord;
+
+    @Setup
+    public void setUp() {
+        DSLContext dslContext = DSL.using(SQLDialect.POSTGRES);
+        userRecord = newRecord(dslContext,
+                "id", "0b3f8e5c-6f1a-4c7e-9d2b-5a4e3c2b1a09",
+                "version", "5d0c1b2a-3e4f-4a5b-8c6d-7e8f9a0b1c2d",
+                "name", "JohnDoe",
+                "normalized_name", "johndoe",
+                "hashed_password", "n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg=",
+                "salt", "AAECAwQFBgcICQoLDA0ODw==");
+        shoppingListRecord = newRecord(dslContext,
+                "id", "1c2d3e4f-5a6b-4c7d-8e9f-0a1b2c3d4e5f",
+                "version", "2d3e4f5a-6b7c-4d8e-9f0a-1b2c3d4e5f6a",
+                "name", "Groceries",
+                "owner", "0b3f8e5c-6f1a-4c7e-9d2b-5a4e3c2b1a09");
+        shoppingListItemRecord = newRecord(dslContext,
+                "id", "3e4f5a6b-7c8d-4e9f-0a1b-2c3d4e5f6a7b",
+                "version", "4f5a6b7c-8d9e-4f0a-1b2c-3d4e5f6a7b8c",
+                "name", "Milk",
+                "created_by", "0b3f8e5c-6f1a-4c7e-9d2b-5a4e3c2b1a09",
+                "modified_by", "0b3f8e5c-6f1a-4c7e-9d2b-5a4e3c2b1a09",
+                "bought_by", null,
+                "state_changed_by", "0b3f8e5c-6f1a-4c7e-9d2b-5a4e3c2b1a09",
+                "shopping_list_id", "1c2d3e4f-5a6b-4c7d-8e9f-0a1b2c3d4e5f");
+    }
+
+    // Takes alternating column names and values.
+    private static Record newRecord(DSLContext dslContext, String... namesAndValues) {
+        List<Field<String>> fields = new ArrayList<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            fields.add(field(namesAndValues[i], String.class));
+        }
+        Record record = dslContext.newRecord(fields);
+        for (int i = 0; i < fields.size(); i++) {
+            record.set(fields.get(i), namesAndValues[2 * i + 1]);
+        }
+        return record;
+    }
+
+    @Benchmark
+    public UserFromDB mapUser() {
+        return userMapper.map(userRecord);
+    }
+
+    @Benchmark
+    public ShoppingList mapShoppingList() {
+        return shoppingListMapper.map(shoppingListRecord);
+    }
+
+    @Benchmark
+    public ShoppingListItem mapShoppingListItem() {
+        return shoppingListItemMapper.map(shoppingListItemRecord);
+    }
+}
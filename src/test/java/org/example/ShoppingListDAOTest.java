@@ -1,14 +1,33 @@
 package org.example;
 
+import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListener;
+import org.jooq.ExecuteType;
 import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultExecuteListener;
+import org.jooq.impl.DefaultExecuteListenerProvider;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
+import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.jooq.impl.DSL.field;
 import static org.jooq.impl.DSL.table;
@@ -28,8 +47,8 @@ public class ShoppingListDAOTest extends TestWithDB {
     @Override
     public void beforeAll() {
         super.beforeAll();
-        userDAO = new UserDAO(dslContext);
         shoppingListDAO = new ShoppingListDAO(dslContext);
+        userDAO = new UserDAO(dslContext, new SessionTokens(), shoppingListDAO);
     }
 
     @BeforeEach
@@ -89,6 +108,26 @@ public class ShoppingListDAOTest extends TestWithDB {
         }).isInstanceOf(ApplicationException.class).hasMessage("ShoppingList not found.");
     }
 
+    @Test
+    public void testGetShoppingListVersion() {
+        dslContext.insertInto(table("shopping_list"))
+                .columns(field("id"), field("version"), field("name"), field("owner"))
+                .values("id-1", "version-1", "list-name-1", "id-john")
+                .execute();
+        dslContext.insertInto(table("shopping_list_authorization"))
+                .columns(field("shopping_list_id"), field("user_id"), field("invitation_accepted"))
+                .values("id-1", "id-john", true)
+                .execute();
+        dslContext.insertInto(table("shopping_list_authorization"))
+                .columns(field("shopping_list_id"), field("user_id"), field("invitation_accepted"))
+                .values("id-1", "id-joe", false)
+                .execute();
+        assertThat(shoppingListDAO.getShoppingListVersion(JOHN, "id-1")).isEqualTo("version-1");
+        assertThat(shoppingListDAO.getShoppingListVersion(JOE, "id-1")).isNull();
+        assertThat(shoppingListDAO.getShoppingListVersion(JACK, "id-1")).isNull();
+        assertThat(shoppingListDAO.getShoppingListVersion(JOHN, "not-existing-id")).isNull();
+    }
+
     @Test
     public void testGetOwnShoppingLists() {
         dslContext.insertInto(table("shopping_list"))
@@ -671,6 +710,31 @@ public class ShoppingListDAOTest extends TestWithDB {
         assertThat(invitedUsers).hasSize(0);
     }
 
+    @Test
+    public void testDeleteUserAccountAnnouncesTheChangedShoppingLists() {
+        ShoppingListDAO listenedShoppingListDAO = new ShoppingListDAO(dslContext);
+        UserDAO listenedUserDAO = new UserDAO(dslContext, new SessionTokens(), listenedShoppingListDAO);
+        List<ShoppingListChange> changes = new ArrayList<>();
+        listenedShoppingListDAO.addChangeListener(changes::add);
+        User Jim = userDAO.addUser(new User("", "", "Jim", "jims-password"));
+        ShoppingList ownShoppingList = shoppingListDAO.addShoppingList(Jim, new ShoppingList("", "", "Jim's shopping list", ""));
+        ShoppingList joinedShoppingList = shoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        shoppingListDAO.invite(JACK, Jim, joinedShoppingList.getId());
+        shoppingListDAO.acceptInvitation(Jim, joinedShoppingList.getId());
+        ShoppingList invitedShoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "John's shopping list", ""));
+        shoppingListDAO.invite(JOHN, Jim, invitedShoppingList.getId());
+
+        listenedUserDAO.deleteUser(Jim.getId(), UserDAOTest.makeAuth(Jim.getId(), "jims-password"));
+
+        assertThat(changes).extracting(ShoppingListChange::getShoppingListId, ShoppingListChange::getChange, ShoppingListChange::getEntityId)
+                .containsExactlyInAnyOrder(
+                        tuple(ownShoppingList.getId(), ShoppingListChange.DELETE, null),
+                        tuple(joinedShoppingList.getId(), ShoppingListChange.LEAVE, Jim.getId()),
+                        tuple(invitedShoppingList.getId(), ShoppingListChange.WITHDRAW_INVITATION, Jim.getId()));
+        ShoppingListDelta delta = shoppingListDAO.getShoppingListDelta(JACK, joinedShoppingList.getId(), 2);
+        assertThat(delta.getRemovedUserIds()).containsExactly(Jim.getId());
+    }
+
     @Test
     public void testLeaveShoppingList() {
         ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "John's shopping list", ""));
@@ -1381,4 +1445,697 @@ public class ShoppingListDAOTest extends TestWithDB {
         assertThat(actual).isEqualTo(expected);
     }
 
+
+    @Test
+    public void testGetShoppingListDelta() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        shoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Äpfel", "", "", "", ""));
+        shoppingListDAO.invite(JACK, JOHN, shoppingList.getId());
+
+        ShoppingListDelta fullDelta = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), -1);
+        assertThat(fullDelta.getRevision()).isEqualTo(2);
+        assertThat(fullDelta.isFullSync()).isTrue();
+        assertThat(fullDelta.getMembers()).containsExactly(JACK);
+        assertThat(fullDelta.getInvitedUsers()).containsExactly(JOHN);
+        assertThat(fullDelta.getItems()).extracting(ShoppingListItem::getName).containsExactly("Äpfel");
+        assertThat(fullDelta.getRemovedUserIds()).isEmpty();
+        assertThat(fullDelta.getRemovedItemIds()).isEmpty();
+
+        ShoppingListDelta emptyDelta = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), fullDelta.getRevision());
+        assertThat(emptyDelta.getRevision()).isEqualTo(fullDelta.getRevision());
+        assertThat(emptyDelta.isFullSync()).isFalse();
+        assertThat(emptyDelta.getMembers()).isEmpty();
+        assertThat(emptyDelta.getInvitedUsers()).isEmpty();
+        assertThat(emptyDelta.getItems()).isEmpty();
+        assertThat(emptyDelta.getRemovedUserIds()).isEmpty();
+        assertThat(emptyDelta.getRemovedItemIds()).isEmpty();
+    }
+
+    @Test
+    public void testGetShoppingListDeltaAfterChanges() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        shoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Äpfel", "", "", "", ""));
+        EnrichedShoppingList enrichedShoppingList = shoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Birnen", "", "", "", ""));
+        shoppingListDAO.invite(JACK, JOHN, shoppingList.getId());
+        shoppingListDAO.invite(JACK, JOE, shoppingList.getId());
+        long revision = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), -1).getRevision();
+
+        ShoppingListItem apples = enrichedShoppingList.getItems().get(0);
+        ShoppingListItem pears = enrichedShoppingList.getItems().get(1);
+        shoppingListDAO.removeShoppingListItem(JACK, shoppingList.getId(), apples);
+        shoppingListDAO.setBought(JACK, shoppingList.getId(), pears);
+        shoppingListDAO.acceptInvitation(JOHN, shoppingList.getId());
+        shoppingListDAO.rejectInvitation(JOE, shoppingList.getId());
+
+        ShoppingListDelta delta = shoppingListDAO.getShoppingListDelta(JOHN, shoppingList.getId(), revision);
+        assertThat(delta.getRevision()).isEqualTo(revision + 4);
+        assertThat(delta.getMembers()).containsExactly(JOHN);
+        assertThat(delta.getInvitedUsers()).isEmpty();
+        assertThat(delta.getItems()).hasSize(1);
+        assertThat(delta.getItems().get(0).getId()).isEqualTo(pears.getId());
+        assertThat(delta.getItems().get(0).getBoughtBy()).isEqualTo(JACK.getId());
+        assertThat(delta.getSortOrders()).containsKey(pears.getId());
+        assertThat(delta.getRemovedItemIds()).containsExactly(apples.getId());
+        assertThat(delta.getRemovedUserIds()).containsExactly(JOE.getId());
+    }
+
+    @Test
+    public void testGetShoppingListDeltaWithReinvitedUser() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        long revision = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), -1).getRevision();
+        shoppingListDAO.invite(JACK, JOHN, shoppingList.getId());
+        shoppingListDAO.withdrawInvitation(JACK, JOHN, shoppingList.getId());
+        shoppingListDAO.invite(JACK, JOHN, shoppingList.getId());
+
+        ShoppingListDelta delta = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), revision);
+        assertThat(delta.getInvitedUsers()).containsExactly(JOHN);
+        assertThat(delta.getRemovedUserIds()).isEmpty();
+    }
+
+    @Test
+    public void testGetShoppingListDeltaAfterRenamingAMember() {
+        User Jim = userDAO.addUser(new User("", "", "Jim", "jims-password"));
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        shoppingListDAO.invite(JACK, Jim, shoppingList.getId());
+        long revision = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), -1).getRevision();
+
+        userDAO.updateUser(new User(Jim.getId(), Jim.getVersion(), "Jimmy", "jims-password"),
+                UserDAOTest.makeAuth(Jim.getId(), "jims-password"));
+
+        ShoppingListDelta delta = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), revision);
+        assertThat(delta.getRevision()).isEqualTo(revision + 1);
+        assertThat(delta.getMembers()).isEmpty();
+        assertThat(delta.getInvitedUsers()).extracting(User::getName).containsExactly("Jimmy");
+    }
+
+    @Test
+    public void testGetShoppingListDeltaAfterTombstonesArePruned() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        EnrichedShoppingList enrichedShoppingList = shoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Äpfel", "", "", "", ""));
+        shoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Birnen", "", "", "", ""));
+        long revision = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), -1).getRevision();
+        shoppingListDAO.removeShoppingListItem(JACK, shoppingList.getId(), enrichedShoppingList.getItems().get(0));
+        long revisionAfterRemoval = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), -1).getRevision();
+        dslContext.update(table("shopping_list_tombstone"))
+                .set(field("created_at"), System.currentTimeMillis() - ShoppingListDAO.TOMBSTONE_RETENTION.toMillis() - 1)
+                .where(field("shopping_list_id").eq(shoppingList.getId()))
+                .execute();
+
+        shoppingListDAO.invite(JACK, JOHN, shoppingList.getId());
+        shoppingListDAO.withdrawInvitation(JACK, JOHN, shoppingList.getId());
+
+        Integer tombstoneCount = dslContext.selectCount()
+                .from("shopping_list_tombstone")
+                .where(field("shopping_list_id").eq(shoppingList.getId()))
+                .fetchOne(0, Integer.class);
+        assertThat(tombstoneCount).isEqualTo(1);
+        ShoppingListDelta fullDelta = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), revision);
+        assertThat(fullDelta.isFullSync()).isTrue();
+        assertThat(fullDelta.getMembers()).containsExactly(JACK);
+        assertThat(fullDelta.getItems()).extracting(ShoppingListItem::getName).containsExactly("Birnen");
+        assertThat(fullDelta.getRemovedItemIds()).isEmpty();
+        ShoppingListDelta delta = shoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), revisionAfterRemoval);
+        assertThat(delta.isFullSync()).isFalse();
+        assertThat(delta.getItems()).isEmpty();
+        assertThat(delta.getRemovedUserIds()).containsExactly(JOHN.getId());
+    }
+
+    @Test
+    public void testTryToGetShoppingListDeltaAsNotAuthorizedUser() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        shoppingListDAO.invite(JACK, JOHN, shoppingList.getId());
+        assertThatThrownBy(() -> {
+            shoppingListDAO.getShoppingListDelta(JOHN, shoppingList.getId(), -1);
+        }).isInstanceOf(ApplicationException.class).hasMessage("ShoppingList not found.");
+        assertThatThrownBy(() -> {
+            shoppingListDAO.getShoppingListDelta(JOE, shoppingList.getId(), -1);
+        }).isInstanceOf(ApplicationException.class).hasMessage("ShoppingList not found.");
+    }
+
+    @Test
+    public void testChangeListenerIsNotifiedAfterMutations() {
+        List<ShoppingListChange> changes = new ArrayList<>();
+        ShoppingListDAO listenedShoppingListDAO = new ShoppingListDAO(dslContext);
+        listenedShoppingListDAO.addChangeListener(changes::add);
+        ShoppingList shoppingList = listenedShoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        EnrichedShoppingList enrichedShoppingList = listenedShoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Äpfel", "", "", "", ""));
+        ShoppingListItem item = enrichedShoppingList.getItems().get(0);
+        listenedShoppingListDAO.setBought(JACK, shoppingList.getId(), item);
+        listenedShoppingListDAO.invite(JACK, JOHN, shoppingList.getId());
+        listenedShoppingListDAO.acceptInvitation(JOHN, shoppingList.getId());
+        listenedShoppingListDAO.leaveShoppingList(JOHN, JOHN, shoppingList.getId());
+        listenedShoppingListDAO.renameShoppingList(JACK, shoppingList.getId(), "Jack's other list");
+        listenedShoppingListDAO.deleteShoppingList(JACK, shoppingList.getId());
+
+        assertThat(changes).extracting(ShoppingListChange::getChange).containsExactly(
+                ShoppingListChange.ADD_ITEM,
+                ShoppingListChange.SET_BOUGHT,
+                ShoppingListChange.INVITE,
+                ShoppingListChange.ACCEPT_INVITATION,
+                ShoppingListChange.LEAVE,
+                ShoppingListChange.RENAME,
+                ShoppingListChange.DELETE);
+        assertThat(changes).extracting(ShoppingListChange::getRevision).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L);
+        assertThat(changes).extracting(ShoppingListChange::getShoppingListId).containsOnly(shoppingList.getId());
+        assertThat(changes.get(0).getEntityId()).isEqualTo(item.getId());
+        assertThat(changes.get(4).getEntityId()).isEqualTo(JOHN.getId());
+    }
+
+    @Test
+    public void testChangeListenerIsNotNotifiedAfterFailedMutation() {
+        List<ShoppingListChange> changes = new ArrayList<>();
+        ShoppingListDAO listenedShoppingListDAO = new ShoppingListDAO(dslContext);
+        listenedShoppingListDAO.addChangeListener(changes::add);
+        ShoppingList shoppingList = listenedShoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        assertThatThrownBy(() -> {
+            listenedShoppingListDAO.acceptInvitation(JOHN, shoppingList.getId());
+        }).isInstanceOf(ApplicationException.class);
+        assertThatThrownBy(() -> {
+            listenedShoppingListDAO.renameShoppingList(JOHN, shoppingList.getId(), "John's list");
+        }).isInstanceOf(ApplicationException.class);
+        assertThat(changes).isEmpty();
+        assertThat(listenedShoppingListDAO.getShoppingListDelta(JACK, shoppingList.getId(), -1).getRevision()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFailingChangeListenerDoesNotFailMutation() {
+        ShoppingListDAO listenedShoppingListDAO = new ShoppingListDAO(dslContext);
+        listenedShoppingListDAO.addChangeListener(change -> {
+            throw new IllegalStateException("Listener failed.");
+        });
+        ShoppingList shoppingList = listenedShoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        EnrichedShoppingList enrichedShoppingList = listenedShoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Äpfel", "", "", "", ""));
+        assertThat(enrichedShoppingList.getItems()).hasSize(1);
+    }
+
+    @Test
+    public void testGetEnrichedShoppingListFromCache() {
+        ShoppingListDAO cachingShoppingListDAO = new ShoppingListDAO(dslContext);
+        ShoppingList shoppingList = cachingShoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        cachingShoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Äpfel", "", "", "", ""));
+        long hitCount = cachingShoppingListDAO.getEnrichedShoppingListCacheStats().hitCount();
+
+        EnrichedShoppingList enrichedShoppingList = cachingShoppingListDAO.getEnrichedShoppingList(JACK, shoppingList.getId());
+        enrichedShoppingList.setName("Modified by the caller");
+        enrichedShoppingList.getItems().get(0).setName("Modified by the caller");
+        enrichedShoppingList.getMembers().clear();
+
+        EnrichedShoppingList cachedShoppingList = cachingShoppingListDAO.getEnrichedShoppingList(JACK, shoppingList.getId());
+        assertThat(cachingShoppingListDAO.getEnrichedShoppingListCacheStats().hitCount()).isEqualTo(hitCount + 2);
+        assertThat(cachedShoppingList.getName()).isEqualTo("Jack's shopping list");
+        assertThat(cachedShoppingList.getItems().get(0).getName()).isEqualTo("Äpfel");
+        assertThat(cachedShoppingList.getMembers()).containsExactly(JACK);
+        assertThat(cachingShoppingListDAO.getEnrichedShoppingListCacheBytes()).isGreaterThan(0);
+    }
+
+    @Test
+    public void testTryToGetCachedEnrichedShoppingListAsNotAuthorizedUser() {
+        ShoppingListDAO cachingShoppingListDAO = new ShoppingListDAO(dslContext);
+        ShoppingList shoppingList = cachingShoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        cachingShoppingListDAO.invite(JACK, JOHN, shoppingList.getId());
+        cachingShoppingListDAO.getEnrichedShoppingList(JACK, shoppingList.getId());
+        assertThatThrownBy(() -> {
+            cachingShoppingListDAO.getEnrichedShoppingList(JOHN, shoppingList.getId());
+        }).isInstanceOf(ApplicationException.class).hasMessage("ShoppingList not found.");
+        assertThatThrownBy(() -> {
+            cachingShoppingListDAO.getEnrichedShoppingList(JOE, shoppingList.getId());
+        }).isInstanceOf(ApplicationException.class).hasMessage("ShoppingList not found.");
+    }
+
+    @Test
+    public void testCachedEnrichedShoppingListIsNotUsedAfterChanges() {
+        ShoppingListDAO cachingShoppingListDAO = new ShoppingListDAO(dslContext);
+        ShoppingList shoppingList = cachingShoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        EnrichedShoppingList enrichedShoppingList = cachingShoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Äpfel", "", "", "", ""));
+
+        // A change made by another instance of the DAO only shows in the version of the list.
+        shoppingListDAO.setBought(JACK, shoppingList.getId(), enrichedShoppingList.getItems().get(0));
+        assertThat(cachingShoppingListDAO.getEnrichedShoppingList(JACK, shoppingList.getId()).getItems().get(0).getBoughtBy())
+                .isEqualTo(JACK.getId());
+
+        cachingShoppingListDAO.setUnbought(JACK, shoppingList.getId(), enrichedShoppingList.getItems().get(0));
+        assertThat(cachingShoppingListDAO.getEnrichedShoppingList(JACK, shoppingList.getId()).getItems().get(0).getBoughtBy())
+                .isNull();
+    }
+
+    @Test
+    public void testCachedEnrichedShoppingListIsNotUsedAfterUserChanges() {
+        ShoppingListDAO cachingShoppingListDAO = new ShoppingListDAO(dslContext);
+        User Jim = userDAO.addUser(new User("", "", "Jim", "jims-password"));
+        ShoppingList shoppingList = cachingShoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        cachingShoppingListDAO.invite(JACK, Jim, shoppingList.getId());
+        String oldVersion = cachingShoppingListDAO.getEnrichedShoppingList(JACK, shoppingList.getId()).getVersion();
+
+        // The rename goes through another instance of the DAO, like on another node, so only the version shows it.
+        userDAO.updateUser(new User(Jim.getId(), Jim.getVersion(), "Jimmy", "jims-password"),
+                UserDAOTest.makeAuth(Jim.getId(), "jims-password"));
+
+        EnrichedShoppingList enrichedShoppingList = cachingShoppingListDAO.getEnrichedShoppingList(JACK, shoppingList.getId());
+        assertThat(enrichedShoppingList.getVersion()).isNotEqualTo(oldVersion)
+                .isEqualTo(cachingShoppingListDAO.getShoppingListVersion(JACK, shoppingList.getId()));
+        assertThat(enrichedShoppingList.getInvitedUsers()).extracting(User::getName).containsExactly("Jimmy");
+    }
+
+    @Test
+    public void testChangingOnlyThePasswordChangesTheShoppingListVersion() {
+        User Jim = userDAO.addUser(new User("", "", "Jim", "jims-password"));
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(Jim, new ShoppingList("", "", "Jim's shopping list", ""));
+        String oldVersion = shoppingListDAO.getEnrichedShoppingList(Jim, shoppingList.getId()).getVersion();
+
+        User updatedJim = userDAO.updateUser(new User(Jim.getId(), Jim.getVersion(), "Jim", "jims-new-password"),
+                UserDAOTest.makeAuth(Jim.getId(), "jims-password"));
+
+        // The enriched list shows the version of each member, which the update has changed.
+        EnrichedShoppingList enrichedShoppingList = shoppingListDAO.getEnrichedShoppingList(updatedJim, shoppingList.getId());
+        assertThat(enrichedShoppingList.getVersion()).isNotEqualTo(oldVersion);
+        assertThat(enrichedShoppingList.getMembers()).extracting(User::getVersion).containsExactly(updatedJim.getVersion());
+    }
+
+    @Test
+    public void testEnrichedShoppingListCacheIsLimitedBySize() {
+        ShoppingListDAO cachingShoppingListDAO = new ShoppingListDAO(dslContext, 4000);
+        for (int i = 0; i < 5; i++) {
+            ShoppingList shoppingList = cachingShoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "List " + i, ""));
+            for (int j = 0; j < 5; j++) {
+                cachingShoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Item " + j, "", "", "", ""));
+            }
+        }
+        assertThat(cachingShoppingListDAO.getEnrichedShoppingListCacheBytes()).isGreaterThan(0).isLessThanOrEqualTo(4000);
+        assertThat(cachingShoppingListDAO.getEnrichedShoppingListCacheStats().evictionCount()).isGreaterThan(0);
+    }
+
+    @Test
+    public void testEnrichedShoppingListCacheOfSizeZeroIsNeverUsed() {
+        ShoppingListDAO uncachedShoppingListDAO = new ShoppingListDAO(dslContext, 0);
+        ShoppingList shoppingList = uncachedShoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        for (int i = 0; i < 100; i++) {
+            uncachedShoppingListDAO.getEnrichedShoppingList(JACK, shoppingList.getId());
+        }
+        assertThat(uncachedShoppingListDAO.getEnrichedShoppingListCacheStats().hitCount()).isEqualTo(0);
+        assertThat(uncachedShoppingListDAO.getEnrichedShoppingListCacheBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentReadsOfTheSameShoppingListShareOneLoad() throws Exception {
+        int numberOfReaders = 8;
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JACK, new ShoppingList("", "", "Jack's shopping list", ""));
+        shoppingListDAO.addShoppingListItem(JACK, shoppingList.getId(), new ShoppingListItem("", "", "Äpfel", "", "", "", ""));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch membershipChecks = new CountDownLatch(numberOfReaders);
+        // Holds the first load back until every reader has passed its membership check and waits for a result.
+        ExecuteListener listener = new DefaultExecuteListener() {
+            @Override
+            public void executeStart(ExecuteContext ctx) {
+                if (ctx.sql().contains("enriched_shopping_list")) {
+                    loads.incrementAndGet();
+                    try {
+                        membershipChecks.await(5, TimeUnit.SECONDS);
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            @Override
+            public void executeEnd(ExecuteContext ctx) {
+                if (ctx.sql().startsWith("select version")) {
+                    membershipChecks.countDown();
+                }
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfReaders);
+        try (ConnectionPool connectionPool = createConnectionPool(numberOfReaders + 1)) {
+            DSLContext countingDslContext = DSL.using(connectionPool.getDataSource(), SQLDialect.POSTGRES)
+                    .configuration().derive(new DefaultExecuteListenerProvider(listener)).dsl();
+            ShoppingListDAO countingShoppingListDAO = new ShoppingListDAO(countingDslContext);
+            List<Future<EnrichedShoppingList>> readers = new ArrayList<>();
+            for (int i = 0; i < numberOfReaders; i++) {
+                readers.add(executor.submit(() -> countingShoppingListDAO.getEnrichedShoppingList(JACK, shoppingList.getId())));
+            }
+            List<EnrichedShoppingList> results = new ArrayList<>();
+            for (Future<EnrichedShoppingList> reader : readers) {
+                results.add(reader.get(10, TimeUnit.SECONDS));
+            }
+
+            assertThat(loads.get()).isEqualTo(1);
+            assertThat(results).extracting(EnrichedShoppingList::getVersion).containsOnly(results.get(0).getVersion());
+            assertThat(results).extracting(enrichedShoppingList -> enrichedShoppingList.getItems().get(0).getName()).containsOnly("Äpfel");
+            assertThat(results.get(0)).isNotSameAs(results.get(1));
+            results.get(0).getItems().get(0).setName("Birnen");
+            assertThat(results.get(1).getItems().get(0).getName()).isEqualTo("Äpfel");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMutationsOfIndependentShoppingListsDoNotBlockEachOther() throws Exception {
+        ShoppingList lockedShoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "locked", ""));
+        ShoppingList otherShoppingList = shoppingListDAO.addShoppingList(JOE, new ShoppingList("", "", "other", ""));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ConnectionPool connectionPool = createConnectionPool(2);
+             Connection lockingConnection = connectionPool.getDataSource().getConnection()) {
+            lockingConnection.setAutoCommit(false);
+            DSL.using(lockingConnection, SQLDialect.POSTGRES).update(table("shopping_list"))
+                    .set(field("name"), "still-locked")
+                    .where(field("id").eq(lockedShoppingList.getId()))
+                    .execute();
+            ShoppingListDAO pooledShoppingListDAO = new ShoppingListDAO(DSL.using(connectionPool.getDataSource(), SQLDialect.POSTGRES));
+
+            Future<EnrichedShoppingList> addedItem = executor.submit(() -> pooledShoppingListDAO.addShoppingListItem(
+                    JOE, otherShoppingList.getId(), new ShoppingListItem(null, null, "milk", null, null, null, null)));
+            assertThat(addedItem.get(5, TimeUnit.SECONDS).getItems()).hasSize(1);
+            Future<List<User>> invitedUsers = executor.submit(() -> pooledShoppingListDAO.invite(JOE, JACK, otherShoppingList.getId()));
+            assertThat(invitedUsers.get(5, TimeUnit.SECONDS)).containsExactly(JACK);
+
+            lockingConnection.rollback();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(shoppingListDAO.getShoppingList(JOHN, lockedShoppingList.getId())).isEqualTo(lockedShoppingList);
+    }
+
+    @Test
+    public void testConcurrentlyAddedItemsGetUniqueAndEvenlySpacedSortOrders() throws Exception {
+        int numberOfItems = 1000;
+        int numberOfThreads = 16;
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "busy", ""));
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try (ConnectionPool connectionPool = createConnectionPool(numberOfThreads)) {
+            ShoppingListDAO pooledShoppingListDAO = new ShoppingListDAO(DSL.using(connectionPool.getDataSource(), SQLDialect.POSTGRES));
+            List<Future<EnrichedShoppingList>> adders = new ArrayList<>();
+            for (int i = 0; i < numberOfItems; i++) {
+                ShoppingListItem item = new ShoppingListItem(null, null, "item " + i, null, null, null, null);
+                adders.add(executor.submit(() -> pooledShoppingListDAO.addShoppingListItem(JOHN, shoppingList.getId(), item)));
+            }
+            for (Future<EnrichedShoppingList> adder : adders) {
+                adder.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Long> sortOrders = dslContext.select(field("sort_order"))
+                .from("shopping_list_item")
+                .where(field("shopping_list_id").eq(shoppingList.getId()))
+                .orderBy(field("sort_order"))
+                .fetch(0, Long.class);
+        assertThat(sortOrders).hasSize(numberOfItems);
+        for (int i = 0; i < numberOfItems; i++) {
+            assertThat(sortOrders.get(i)).isEqualTo(i * ShoppingListDAO.SORT_ORDER_GAP);
+        }
+    }
+
+    @Test
+    public void testItemAddedAfterARemovalGetsANewSortOrder() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        shoppingListDAO.addShoppingListItem(JOHN, shoppingList.getId(), new ShoppingListItem(null, null, "first", null, null, null, null));
+        EnrichedShoppingList enrichedShoppingList = shoppingListDAO.addShoppingListItem(JOHN, shoppingList.getId(), new ShoppingListItem(null, null, "second", null, null, null, null));
+        shoppingListDAO.removeShoppingListItem(JOHN, shoppingList.getId(), enrichedShoppingList.getItems().get(0));
+
+        enrichedShoppingList = shoppingListDAO.addShoppingListItem(JOHN, shoppingList.getId(), new ShoppingListItem(null, null, "third", null, null, null, null));
+
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("second", "third");
+        assertThat(dslContext.select(field("sort_order"))
+                .from("shopping_list_item")
+                .where(field("shopping_list_id").eq(shoppingList.getId()))
+                .orderBy(field("sort_order"))
+                .fetch(0, Long.class)).containsExactly(ShoppingListDAO.SORT_ORDER_GAP, 2 * ShoppingListDAO.SORT_ORDER_GAP);
+    }
+
+    private List<String> addItems(ShoppingList shoppingList, String... names) {
+        List<String> ids = new ArrayList<>();
+        for (String name : names) {
+            EnrichedShoppingList enrichedShoppingList = shoppingListDAO.addShoppingListItem(JOHN, shoppingList.getId(), new ShoppingListItem(null, null, name, null, null, null, null));
+            ids.add(enrichedShoppingList.getItems().get(enrichedShoppingList.getItems().size() - 1).getId());
+        }
+        return ids;
+    }
+
+    private List<Long> getSortOrders(ShoppingList shoppingList) {
+        return dslContext.select(field("sort_order"))
+                .from("shopping_list_item")
+                .where(field("shopping_list_id").eq(shoppingList.getId()))
+                .orderBy(field("sort_order"))
+                .fetch(0, Long.class);
+    }
+
+    @Test
+    public void testMoveShoppingListItem() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        List<String> ids = addItems(shoppingList, "a", "b", "c", "d");
+
+        EnrichedShoppingList enrichedShoppingList = shoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(3), ids.get(0));
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("a", "d", "b", "c");
+
+        enrichedShoppingList = shoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(2), null);
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("c", "a", "d", "b");
+
+        enrichedShoppingList = shoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(0), ids.get(1));
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("c", "d", "b", "a");
+
+        enrichedShoppingList = shoppingListDAO.addShoppingListItem(JOHN, shoppingList.getId(), new ShoppingListItem(null, null, "e", null, null, null, null));
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("c", "d", "b", "a", "e");
+        assertThat(getSortOrders(shoppingList)).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void testMoveShoppingListItemOnlyUpdatesTheMovedItem() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        List<String> ids = addItems(shoppingList, "a", "b", "c");
+        long revision = shoppingListDAO.getShoppingListDelta(JOHN, shoppingList.getId(), -1).getRevision();
+
+        shoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(2), ids.get(0));
+
+        ShoppingListDelta delta = shoppingListDAO.getShoppingListDelta(JOHN, shoppingList.getId(), revision);
+        assertThat(delta.getItems()).extracting(ShoppingListItem::getName).containsExactly("c");
+        assertThat(delta.getSortOrders()).containsEntry(ids.get(2), ShoppingListDAO.SORT_ORDER_GAP / 2);
+    }
+
+    @Test
+    public void testMoveShoppingListItemFails() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        List<String> ids = addItems(shoppingList, "a", "b");
+
+        assertThatThrownBy(() -> shoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), "id-unknown", ids.get(0)))
+                .isInstanceOf(ApplicationException.class)
+                .hasMessage("Cannot move ShoppingListItem.");
+        assertThatThrownBy(() -> shoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(0), "id-unknown"))
+                .isInstanceOf(ApplicationException.class)
+                .hasMessage("Cannot move ShoppingListItem.");
+        assertThatThrownBy(() -> shoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(0), ids.get(0)))
+                .isInstanceOf(ApplicationException.class)
+                .hasMessage("Cannot move ShoppingListItem.");
+        assertThatThrownBy(() -> shoppingListDAO.moveShoppingListItem(JOE, shoppingList.getId(), ids.get(1), null))
+                .isInstanceOf(ApplicationException.class)
+                .hasMessage("ShoppingList not found.");
+        assertThat(shoppingListDAO.getEnrichedShoppingList(JOHN, shoppingList.getId()).getItems())
+                .extracting(ShoppingListItem::getName).containsExactly("a", "b");
+    }
+
+    @Test
+    public void testRepeatedMovesIntoTheSameGapRebalanceTheList() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        List<String> ids = addItems(shoppingList, "a", "b", "c");
+        ShoppingListDAO rebalancingShoppingListDAO = new ShoppingListDAO(dslContext, 1024 * 1024, Runnable::run);
+        List<ShoppingListChange> changes = new ArrayList<>();
+        rebalancingShoppingListDAO.addChangeListener(changes::add);
+
+        EnrichedShoppingList enrichedShoppingList = null;
+        for (int i = 0; i < 20; i++) {
+            enrichedShoppingList = rebalancingShoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(1 + i % 2), ids.get(0));
+        }
+
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("a", "c", "b");
+        assertThat(changes).extracting(ShoppingListChange::getChange).contains(ShoppingListChange.REORDER_ITEMS);
+        List<Long> sortOrders = getSortOrders(shoppingList);
+        assertThat(sortOrders.get(1) - sortOrders.get(0)).isGreaterThanOrEqualTo(ShoppingListDAO.MIN_SORT_ORDER_GAP);
+        assertThat(sortOrders.get(2) - sortOrders.get(1)).isGreaterThanOrEqualTo(ShoppingListDAO.MIN_SORT_ORDER_GAP);
+    }
+
+    @Test
+    public void testMovesStillWorkAfterTheRebalanceExecutorIsClosed() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        List<String> ids = addItems(shoppingList, "a", "b", "c");
+        ShoppingListDAO closedShoppingListDAO = new ShoppingListDAO(dslContext);
+        List<ShoppingListChange> changes = new ArrayList<>();
+        closedShoppingListDAO.addChangeListener(changes::add);
+        closedShoppingListDAO.close();
+
+        EnrichedShoppingList enrichedShoppingList = null;
+        for (int i = 0; i < 20; i++) {
+            enrichedShoppingList = closedShoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(1 + i % 2), ids.get(0));
+        }
+
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("a", "c", "b");
+        assertThat(changes).extracting(ShoppingListChange::getChange).doesNotContain(ShoppingListChange.REORDER_ITEMS);
+    }
+
+    @Test
+    public void testFailedRebalancesAreCounted() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        List<String> ids = addItems(shoppingList, "a", "b", "c");
+        // Only renumbering runs as a batch here, and the first renumbering is the rebalance in the background.
+        AtomicBoolean failNextBatch = new AtomicBoolean(true);
+        ExecuteListener failingBatches = new DefaultExecuteListener() {
+            @Override
+            public void executeStart(ExecuteContext ctx) {
+                if (ctx.type() == ExecuteType.BATCH && failNextBatch.getAndSet(false)) {
+                    throw new DataAccessException("Renumbering failed.");
+                }
+            }
+        };
+        DSLContext failingDslContext = dslContext.configuration().derive(new DefaultExecuteListenerProvider(failingBatches)).dsl();
+        ShoppingListDAO rebalancingShoppingListDAO = new ShoppingListDAO(failingDslContext, 1024 * 1024, Runnable::run);
+
+        EnrichedShoppingList enrichedShoppingList = null;
+        for (int i = 0; i < 20; i++) {
+            enrichedShoppingList = rebalancingShoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(1 + i % 2), ids.get(0));
+        }
+
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("a", "c", "b");
+        assertThat(rebalancingShoppingListDAO.getFailedRebalances()).isGreaterThan(0);
+    }
+
+    @Test
+    public void testMoveShoppingListItemRenumbersTheListWhenThereIsNoRoom() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        List<String> ids = addItems(shoppingList, "a", "b", "c");
+        for (int i = 0; i < ids.size(); i++) {
+            dslContext.update(table("shopping_list_item"))
+                    .set(field("sort_order"), i)
+                    .where(field("id").eq(ids.get(i)))
+                    .execute();
+        }
+
+        EnrichedShoppingList enrichedShoppingList = shoppingListDAO.moveShoppingListItem(JOHN, shoppingList.getId(), ids.get(2), ids.get(0));
+
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("a", "c", "b");
+        assertThat(getSortOrders(shoppingList)).containsExactly(0L, ShoppingListDAO.SORT_ORDER_GAP / 2, ShoppingListDAO.SORT_ORDER_GAP);
+        enrichedShoppingList = shoppingListDAO.addShoppingListItem(JOHN, shoppingList.getId(), new ShoppingListItem(null, null, "d", null, null, null, null));
+        assertThat(enrichedShoppingList.getItems()).extracting(ShoppingListItem::getName).containsExactly("a", "c", "b", "d");
+    }
+
+    @Test
+    public void testApplyShoppingListItemOperations() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        addItems(shoppingList, "a", "b", "c");
+        EnrichedShoppingList before = shoppingListDAO.getEnrichedShoppingList(JOHN, shoppingList.getId());
+        ShoppingListItem a = before.getItems().get(0);
+        ShoppingListItem b = before.getItems().get(1);
+        long revision = shoppingListDAO.getShoppingListDelta(JOHN, shoppingList.getId(), -1).getRevision();
+        List<ShoppingListChange> changes = new ArrayList<>();
+        ShoppingListDAO listenedShoppingListDAO = new ShoppingListDAO(dslContext);
+        listenedShoppingListDAO.addChangeListener(changes::add);
+
+        EnrichedShoppingList after = listenedShoppingListDAO.applyShoppingListItemOperations(JOHN, shoppingList.getId(), List.of(
+                new ShoppingListItemOperation(ShoppingListItemOperation.ADD, new ShoppingListItem(null, null, "d", null, null, null, null)),
+                new ShoppingListItemOperation(ShoppingListItemOperation.REMOVE, a),
+                new ShoppingListItemOperation(ShoppingListItemOperation.SET_BOUGHT, b),
+                new ShoppingListItemOperation(ShoppingListItemOperation.ADD, new ShoppingListItem(null, null, "e", null, null, null, null))));
+
+        assertThat(after.getItems()).extracting(ShoppingListItem::getName).containsExactly("b", "c", "d", "e");
+        assertThat(after.getItems()).extracting(ShoppingListItem::getBoughtBy).containsExactly("id-john", null, null, null);
+        assertThat(after.getVersion()).isNotEqualTo(before.getVersion());
+        assertThat(changes).extracting(ShoppingListChange::getChange).containsExactly(ShoppingListChange.UPDATE_ITEMS);
+        assertThat(changes).extracting(ShoppingListChange::getRevision).containsExactly(revision + 1);
+        ShoppingListDelta delta = shoppingListDAO.getShoppingListDelta(JOHN, shoppingList.getId(), revision);
+        assertThat(delta.getRevision()).isEqualTo(revision + 1);
+        assertThat(delta.getItems()).extracting(ShoppingListItem::getName).containsExactly("b", "d", "e");
+        assertThat(delta.getRemovedItemIds()).containsExactly(a.getId());
+
+        after = shoppingListDAO.applyShoppingListItemOperations(JOHN, shoppingList.getId(), List.of(
+                new ShoppingListItemOperation(ShoppingListItemOperation.SET_UNBOUGHT, b)));
+        assertThat(after.getItems()).extracting(ShoppingListItem::getBoughtBy).containsOnlyNulls();
+    }
+
+    @Test
+    public void testApplyShoppingListItemOperationsAppliesNothingIfOneFails() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        addItems(shoppingList, "a");
+        EnrichedShoppingList before = shoppingListDAO.getEnrichedShoppingList(JOHN, shoppingList.getId());
+
+        assertThatThrownBy(() -> shoppingListDAO.applyShoppingListItemOperations(JOHN, shoppingList.getId(), List.of(
+                new ShoppingListItemOperation(ShoppingListItemOperation.ADD, new ShoppingListItem(null, null, "b", null, null, null, null)),
+                new ShoppingListItemOperation(ShoppingListItemOperation.SET_BOUGHT, before.getItems().get(0)),
+                new ShoppingListItemOperation(ShoppingListItemOperation.REMOVE, new ShoppingListItem("id-unknown", "version-unknown", "x", null, null, null, null)))))
+                .isInstanceOf(ApplicationException.class)
+                .hasMessage("Cannot remove ShoppingListItem.");
+
+        assertThat(shoppingListDAO.getEnrichedShoppingList(JOHN, shoppingList.getId())).isEqualTo(before);
+    }
+
+    @Test
+    public void testApplyShoppingListItemOperationsRejectsInvalidOperations() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        ShoppingListItem item = new ShoppingListItem(null, null, "a", null, null, null, null);
+
+        assertThatThrownBy(() -> shoppingListDAO.applyShoppingListItemOperations(JOHN, shoppingList.getId(), List.of()))
+                .isInstanceOf(ApplicationException.class)
+                .hasMessage("Invalid number of operations.");
+        assertThatThrownBy(() -> shoppingListDAO.applyShoppingListItemOperations(JOHN, shoppingList.getId(), List.of(
+                new ShoppingListItemOperation("rename", item))))
+                .isInstanceOf(ApplicationException.class)
+                .hasMessage("Invalid operation.");
+        assertThatThrownBy(() -> shoppingListDAO.applyShoppingListItemOperations(JOHN, shoppingList.getId(), List.of(
+                new ShoppingListItemOperation(ShoppingListItemOperation.ADD, new ShoppingListItem(null, null, "", null, null, null, null)))))
+                .isInstanceOf(ApplicationException.class)
+                .hasMessage("Invalid name.");
+        assertThatThrownBy(() -> shoppingListDAO.applyShoppingListItemOperations(JOE, shoppingList.getId(), List.of(
+                new ShoppingListItemOperation(ShoppingListItemOperation.ADD, item))))
+                .isInstanceOf(ApplicationException.class)
+                .hasMessage("ShoppingList not found.");
+        assertThat(shoppingListDAO.getEnrichedShoppingList(JOHN, shoppingList.getId()).getItems()).isEmpty();
+    }
+
+    @Test
+    public void testMinimalItemMutations() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        dslContext.insertInto(table("shopping_list_authorization"))
+                .columns(field("shopping_list_id"), field("user_id"), field("invitation_accepted"))
+                .values(shoppingList.getId(), "id-joe", true)
+                .execute();
+        String version = shoppingListDAO.getShoppingListVersion(JOHN, shoppingList.getId());
+
+        ShoppingListItemResult added = shoppingListDAO.addShoppingListItemMinimal(JOHN, shoppingList.getId(), new ShoppingListItem(null, null, "Äpfel", null, null, null, null), version);
+        assertThat(added.getItem().getName()).isEqualTo("Äpfel");
+        assertThat(added.getItem().getCreatedBy()).isEqualTo("id-john");
+        assertThat(added.getOthersChanged()).isFalse();
+        assertThat(added.getVersion()).isEqualTo(shoppingListDAO.getShoppingListVersion(JOHN, shoppingList.getId()));
+
+        ShoppingListItemResult bought = shoppingListDAO.setBoughtMinimal(JOE, shoppingList.getId(), added.getItem(), null);
+        assertThat(bought.getItem()).isEqualTo(new ShoppingListItem(added.getItem().getId(), added.getItem().getVersion(), "Äpfel", "id-john", "id-john", "id-joe", "id-joe"));
+        assertThat(bought.getOthersChanged()).isNull();
+        assertThat(bought.getRevision()).isEqualTo(added.getRevision() + 1);
+
+        ShoppingListItemResult unbought = shoppingListDAO.setUnboughtMinimal(JOHN, shoppingList.getId(), added.getItem(), added.getVersion());
+        assertThat(unbought.getItem().getBoughtBy()).isNull();
+        assertThat(unbought.getOthersChanged()).isTrue();
+
+        ShoppingListItemResult removed = shoppingListDAO.removeShoppingListItemMinimal(JOHN, shoppingList.getId(), added.getItem(), unbought.getVersion());
+        assertThat(removed.getItem().getId()).isEqualTo(added.getItem().getId());
+        assertThat(removed.getOthersChanged()).isFalse();
+        assertThat(removed.getVersion()).isEqualTo(shoppingListDAO.getShoppingListVersion(JOHN, shoppingList.getId()));
+        assertThat(shoppingListDAO.getEnrichedShoppingList(JOHN, shoppingList.getId()).getItems()).isEmpty();
+    }
+
+    @Test
+    public void testMinimalItemMutationsDoNotReadTheEnrichedShoppingList() {
+        ShoppingList shoppingList = shoppingListDAO.addShoppingList(JOHN, new ShoppingList("", "", "list", ""));
+        List<String> statements = new ArrayList<>();
+        DSLContext recordingDslContext = dslContext.configuration()
+                .derive(new DefaultExecuteListenerProvider(new DefaultExecuteListener() {
+                    @Override
+                    public void executeStart(ExecuteContext ctx) {
+                        statements.add(ctx.sql());
+                    }
+                })).dsl();
+        ShoppingListDAO recordingShoppingListDAO = new ShoppingListDAO(recordingDslContext);
+
+        ShoppingListItemResult added = recordingShoppingListDAO.addShoppingListItemMinimal(JOHN, shoppingList.getId(), new ShoppingListItem(null, null, "milk", null, null, null, null), null);
+        recordingShoppingListDAO.setBoughtMinimal(JOHN, shoppingList.getId(), added.getItem(), added.getVersion());
+
+        assertThat(statements).isNotEmpty().noneMatch(sql -> sql.contains("union"));
+    }
 }
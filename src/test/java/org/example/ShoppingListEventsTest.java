@@ -0,0 +1,152 @@
+package org.example;
+
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShoppingListEventsTest {
+
+    private static final User JOHN = new User("id-john", "version-john", "John", null);
+    private static final User JOE = new User("id-joe", "version-joe", "Joe", null);
+
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private final ShoppingListEvents shoppingListEvents = new ShoppingListEvents(Duration.ofHours(1), Duration.ofMillis(200));
+
+    @AfterEach
+    public void afterEach() {
+        unblock.countDown();
+        shoppingListEvents.close();
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotDelayOthers() throws Exception {
+        RecordingSink slowSink = new RecordingSink(unblock);
+        RecordingSink fastSink = new RecordingSink(null);
+        shoppingListEvents.subscribe(JOHN, "list-1", slowSink);
+        shoppingListEvents.subscribe(JOE, "list-1", fastSink);
+
+        shoppingListEvents.shoppingListChanged(new ShoppingListChange("list-1", 1, ShoppingListChange.ADD_ITEM, "item-1"));
+
+        assertThat(fastSink.awaitEvents(2)).isTrue();
+        assertThat(fastSink.events.get(1).getId()).isEqualTo("1");
+        assertThat(slowSink.events).isEmpty();
+    }
+
+    @Test
+    public void testStalledSubscriberIsDropped() throws Exception {
+        RecordingSink slowSink = new RecordingSink(unblock);
+        shoppingListEvents.subscribe(JOHN, "list-1", slowSink);
+
+        assertThat(slowSink.closed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(shoppingListEvents.getSubscriptionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSubscriberIsDroppedWhenItsQueueIsFull() {
+        RecordingSink slowSink = new RecordingSink(unblock);
+        shoppingListEvents.subscribe(JOHN, "list-1", slowSink);
+
+        for (int i = 1; i <= ShoppingListEvents.MAX_QUEUED_EVENTS + 1; i++) {
+            shoppingListEvents.shoppingListChanged(new ShoppingListChange("list-1", i, ShoppingListChange.ADD_ITEM, "item-" + i));
+        }
+
+        assertThat(shoppingListEvents.getSubscriptionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLeavingUserIsUnsubscribedAfterTheEvent() throws Exception {
+        RecordingSink johnsSink = new RecordingSink(null);
+        RecordingSink joesSink = new RecordingSink(null);
+        shoppingListEvents.subscribe(JOHN, "list-1", johnsSink);
+        shoppingListEvents.subscribe(JOE, "list-1", joesSink);
+
+        shoppingListEvents.shoppingListChanged(new ShoppingListChange("list-1", 1, ShoppingListChange.LEAVE, JOE.getId()));
+
+        assertThat(joesSink.closed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(joesSink.events).hasSize(2);
+        assertThat(johnsSink.awaitEvents(2)).isTrue();
+        assertThat(johnsSink.isClosed()).isFalse();
+        assertThat(shoppingListEvents.getSubscriptionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testChangesOlderThanTheLastQueuedOneAreSkipped() throws Exception {
+        RecordingSink sink = new RecordingSink(null);
+        shoppingListEvents.subscribe(JOHN, "list-1", sink);
+
+        shoppingListEvents.shoppingListChanged(new ShoppingListChange("list-1", 2, ShoppingListChange.ADD_ITEM, "item-2"));
+        shoppingListEvents.shoppingListChanged(new ShoppingListChange("list-1", 1, ShoppingListChange.ADD_ITEM, "item-1"));
+        shoppingListEvents.shoppingListChanged(new ShoppingListChange("list-1", 3, ShoppingListChange.ADD_ITEM, "item-3"));
+
+        assertThat(sink.awaitEvents(3)).isTrue();
+        Thread.sleep(100);
+        assertThat(sink.events).extracting(OutboundSseEvent::getId).containsExactly(null, "2", "3");
+    }
+
+    @Test
+    public void testSkippedLeaveStillEndsTheSubscription() throws Exception {
+        RecordingSink sink = new RecordingSink(null);
+        shoppingListEvents.subscribe(JOE, "list-1", sink);
+
+        shoppingListEvents.shoppingListChanged(new ShoppingListChange("list-1", 2, ShoppingListChange.ADD_ITEM, "item-2"));
+        shoppingListEvents.shoppingListChanged(new ShoppingListChange("list-1", 1, ShoppingListChange.LEAVE, JOE.getId()));
+
+        assertThat(sink.closed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(sink.events).extracting(OutboundSseEvent::getId).containsExactly(null, "2");
+        assertThat(shoppingListEvents.getSubscriptionCount()).isEqualTo(0);
+    }
+
+    // Writes complete at once, or only after the latch is released to simulate a client that does not read.
+    private static class RecordingSink implements SseEventSink {
+        private final CountDownLatch blockUntil;
+        private final List<OutboundSseEvent> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private RecordingSink(CountDownLatch blockUntil) {
+            this.blockUntil = blockUntil;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed.getCount() == 0;
+        }
+
+        @Override
+        public CompletionStage<?> send(OutboundSseEvent event) {
+            if (blockUntil != null) {
+                try {
+                    blockUntil.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return CompletableFuture.failedFuture(new IllegalStateException("The client went away."));
+            }
+            events.add(event);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        private boolean awaitEvents(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (events.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            return events.size() >= count;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.jooq.DSLContext;
+import org.jooq.Record2;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.table;
+
+// Starts the server as Main wires it, seeds users with shopping lists, members and items with DatasetGenerator, and then
+// lets many clients call get-enriched, add-item, set-bought and invite in a configurable mix. Prints throughput, latency
+// percentiles and errors per operation, so two builds can be compared on the same machine.
+// Arguments: number of clients (default 64), measured seconds (default 30), number of users (default 1000), the mix as
+// operation=weight pairs (default get-enriched=70,add-item=15,set-bought=10,invite=5) and warm-up seconds (default 10).
+// Runs against an in-memory H2 database unless LOAD_TEST_DB_URL (plus LOAD_TEST_DB_USERNAME and
+// LOAD_TEST_DB_PASSWORD) points to a scratch Postgres database, whose tables are dropped and recreated.
+// Clients and server share the JVM, so the clients' work counts against the server's cores.
+public class ShoppingListLoadTester {
+
+    private static final String DEFAULT_MIX = "get-enriched=70,add-item=15,set-bought=10,invite=5";
+    private static final double MEAN_ITEMS_PER_LIST = 30;
+    private static final double LONG_TAIL_RATIO = 0.01;
+    private static final int MAX_ITEMS_PER_LIST = 1000;
+    private static final double MEAN_MEMBERS_PER_LIST = 2;
+    private static final int COMMUNITY_SIZE = 20;
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final double[] PERCENTILES = {50, 95, 99, 99.9};
+
+    public static void main(String[] args) throws Exception {
+        int numberOfClients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int numberOfUsers = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        Map<String, Integer> mix = parseMix(args.length > 3 ? args[3] : DEFAULT_MIX);
+        int warmUpSeconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        String dbUrl = System.getenv("LOAD_TEST_DB_URL");
+        try (ConnectionPool connectionPool = dbUrl == null
+                ? new ConnectionPool("jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE;", "sa", "")
+                : new ConnectionPool(dbUrl, System.getenv("LOAD_TEST_DB_USERNAME"), System.getenv("LOAD_TEST_DB_PASSWORD"));
+             ShoppingListEvents shoppingListEvents = new ShoppingListEvents()) {
+            DSLContext dslContext = DSL.using(connectionPool.getDataSource(), SQLDialect.POSTGRES);
+            new Migrator(dslContext).reset();
+            Server server = Main.createServer(0, dslContext, shoppingListEvents, false);
+            server.start();
+            try {
+                long seedStart = System.nanoTime();
+                DatasetGenerator generator = seed(dslContext, numberOfUsers);
+                List<SeededList> lists = getSeededLists(dslContext, generator);
+                System.out.printf("seeded %d users with one shopping list each in %d ms%n",
+                        numberOfUsers, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+                int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+                new ShoppingListLoadTester(URI.create("http://localhost:" + port + "/"), generator, lists, mix)
+                        .run(numberOfClients, warmUpSeconds, seconds);
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] operationAndWeight = entry.split("=", 2);
+            String operation = operationAndWeight[0].trim();
+            if (!List.of("get-enriched", "add-item", "set-bought", "invite").contains(operation)) {
+                throw new IllegalArgumentException("Unknown operation " + operation + ".");
+            }
+            weights.put(operation, Integer.parseInt(operationAndWeight[1].trim()));
+        }
+        return weights;
+    }
+
+    // Seeds one list per user with DatasetGenerator and fixed parameters, so every run starts from the same data.
+    private static DatasetGenerator seed(DSLContext dslContext, int numberOfUsers) {
+        DatasetGenerator generator = new DatasetGenerator(dslContext, 42, numberOfUsers, numberOfUsers, MEAN_ITEMS_PER_LIST,
+                LONG_TAIL_RATIO, MAX_ITEMS_PER_LIST, MEAN_MEMBERS_PER_LIST, COMMUNITY_SIZE, 0.8, 0.3);
+        generator.generate();
+        return generator;
+    }
+
+    private static List<SeededList> getSeededLists(DSLContext dslContext, DatasetGenerator generator) {
+        Map<String, SeededList> listsById = new LinkedHashMap<>();
+        for (int list = 0; list < generator.getShoppingLists(); list++) {
+            int owner = generator.getOwner(list);
+            listsById.put(generator.getShoppingListId(list), new SeededList(generator.getShoppingListId(list), owner, generator.getUserId(owner)));
+        }
+        for (Record2<String, String> item : dslContext.select(field("shopping_list_id", String.class), field("id", String.class))
+                .from(table("shopping_list_item"))
+                .where(field("bought_by").isNull())
+                .fetch()) {
+            listsById.get(item.value1()).unboughtItemIds.add(item.value2());
+        }
+        return new ArrayList<>(listsById.values());
+    }
+
+    private final URI baseUri;
+    private final DatasetGenerator generator;
+    private final List<SeededList> lists;
+    private final String[] operations;
+    private final int[] cumulativeWeights;
+    private final Map<String, Recorder> latencies = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    private volatile boolean running = true;
+
+    private ShoppingListLoadTester(URI baseUri, DatasetGenerator generator, List<SeededList> lists, Map<String, Integer> mix) {
+        this.baseUri = baseUri;
+        this.generator = generator;
+        this.lists = lists;
+        this.operations = mix.keySet().toArray(new String[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+            latencies.put(operations[i], new Recorder(1, HIGHEST_TRACKABLE_MICROS, 2));
+            errors.put(operations[i], new LongAdder());
+        }
+    }
+
+    private void run(int numberOfClients, int warmUpSeconds, int seconds) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(numberOfClients);
+        for (int i = 0; i < numberOfClients; i++) {
+            clients.execute(this::runClient);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmUpSeconds));
+        // Discards what was recorded during the warm-up.
+        for (String operation : operations) {
+            latencies.get(operation).reset();
+            errors.get(operation).reset();
+        }
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        Map<String, Long> errorCounts = new LinkedHashMap<>();
+        for (String operation : operations) {
+            histograms.put(operation, latencies.get(operation).getIntervalHistogram());
+            errorCounts.put(operation, errors.get(operation).sum());
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        running = false;
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.printf("clients=%d seconds=%.1f%n", numberOfClients, elapsedSeconds);
+        Histogram total = new Histogram(1, HIGHEST_TRACKABLE_MICROS, 2);
+        long totalErrors = 0;
+        for (String operation : operations) {
+            total.add(histograms.get(operation));
+            totalErrors += errorCounts.get(operation);
+            print(operation, histograms.get(operation), errorCounts.get(operation), elapsedSeconds);
+        }
+        print("total", total, totalErrors, elapsedSeconds);
+    }
+
+    private static void print(String operation, Histogram histogram, long errorCount, double elapsedSeconds) {
+        long count = histogram.getTotalCount();
+        StringBuilder line = new StringBuilder(String.format("%-13s requests=%-8d throughput=%8.1f/s errors=%d (%.2f%%)",
+                operation, count, count / elapsedSeconds, errorCount, count == 0 ? 0 : 100.0 * errorCount / count));
+        for (double percentile : PERCENTILES) {
+            line.append(String.format(" p%s=%.2f ms", percentile == (long) percentile ? Long.toString((long) percentile) : Double.toString(percentile),
+                    histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        line.append(String.format(" max=%.2f ms", histogram.getMaxValue() / 1000.0));
+        System.out.println(line);
+    }
+
+    // A closed loop: every client sends its next request as soon as the previous one is answered.
+    private void runClient() {
+        while (running) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String operation = pickOperation(random);
+            SeededList list = lists.get(random.nextInt(lists.size()));
+            long start = System.nanoTime();
+            boolean success;
+            try {
+                success = execute(operation, list, random);
+            } catch (Exception e) {
+                success = false;
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            latencies.get(operation).recordValue(Math.max(1, Math.min(micros, HIGHEST_TRACKABLE_MICROS)));
+            if (!success) {
+                errors.get(operation).increment();
+            }
+        }
+    }
+
+    private String pickOperation(Random random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < operations.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private boolean execute(String operation, SeededList list, Random random) throws Exception {
+        switch (operation) {
+            case "get-enriched":
+                return send(list, HttpRequest.newBuilder(baseUri.resolve("shopping-list/get-enriched/" + list.id)).GET()).statusCode() == 200;
+            case "add-item": {
+                // Asks for the added item only, so its id can be handed to set-bought.
+                HttpResponse<String> response = send(list, HttpRequest.newBuilder(baseUri.resolve("shopping-list/add-item/" + list.id))
+                        .header("Content-Type", "application/json")
+                        .header("Prefer", "return=minimal")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"name\": \"Item " + random.nextInt(1000) + "\"}")));
+                if (response.statusCode() != 200) {
+                    return false;
+                }
+                list.unboughtItemIds.add(objectMapper.readTree(response.body()).path("item").path("id").asText());
+                return true;
+            }
+            case "set-bought": {
+                String itemId = list.unboughtItemIds.poll();
+                if (itemId == null) {
+                    return false;
+                }
+                return send(list, HttpRequest.newBuilder(baseUri.resolve("shopping-list/set-bought/" + list.id))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"id\": \"" + itemId + "\"}"))).statusCode() == 200;
+            }
+            case "invite": {
+                // Members are drawn from the users following the owner, so the users preceding the owner are not on the
+                // list yet. Once all of them are invited, further invitations fail.
+                String inviteeId = generator.getUserId(Math.floorMod(list.owner - list.nextInvitee.incrementAndGet(), generator.getUsers()));
+                return send(list, HttpRequest.newBuilder(baseUri.resolve("shopping-list/invite/" + list.id + "/" + inviteeId))
+                        .POST(HttpRequest.BodyPublishers.noBody())).statusCode() == 200;
+            }
+            default:
+                throw new IllegalStateException("Unknown operation " + operation + ".");
+        }
+    }
+
+    private HttpResponse<String> send(SeededList list, HttpRequest.Builder request) throws Exception {
+        return httpClient.send(request.header("Authorization", list.auth).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static class SeededList {
+        private final String id;
+        private final int owner;
+        private final String auth;
+        private final Queue<String> unboughtItemIds = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger nextInvitee = new AtomicInteger();
+
+        private SeededList(String id, int owner, String ownerId) {
+            this.id = id;
+            this.owner = owner;
+            this.auth = "Basic " + Base64.getEncoder().encodeToString((ownerId + ":" + DatasetGenerator.PASSWORD).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.example;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Opens many idle server-sent event subscriptions to one shopping list, then measures how long it takes until a
+// change reaches all of them and how many server threads the subscriptions need.
+// Arguments: number of subscriptions (default 2000) and number of changes (default 10).
+// Runs against an in-memory H2 database, so it only needs the test classpath.
+public class ShoppingListSubscriptionLoadTester {
+
+    private static final String PASSWORD = "load-tester-password";
+
+    public static void main(String[] args) throws Exception {
+        int numberOfSubscriptions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int numberOfChanges = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        try (ConnectionPool connectionPool = new ConnectionPool("jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE;", "sa", "");
+             ShoppingListEvents shoppingListEvents = new ShoppingListEvents()) {
+            DSLContext dslContext = DSL.using(connectionPool.getDataSource(), SQLDialect.POSTGRES);
+            Server server = Main.createServer(0, dslContext, shoppingListEvents, false);
+            server.start();
+            try {
+                int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+                run(URI.create("http://localhost:" + port + "/"), (QueuedThreadPool) server.getThreadPool(), dslContext, shoppingListEvents, numberOfSubscriptions, numberOfChanges);
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    private static void run(URI baseUri, QueuedThreadPool serverThreadPool, DSLContext dslContext, ShoppingListEvents shoppingListEvents,
+                            int numberOfSubscriptions, int numberOfChanges) throws Exception {
+        User user = new UserDAO(dslContext).addUser(new User(null, null, "loadtester", PASSWORD));
+        String auth = "Basic " + Base64.getEncoder().encodeToString((user.getId() + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+        ShoppingList shoppingList = new ShoppingListDAO(dslContext).addShoppingList(user, new ShoppingList("", "", "Load test", ""));
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+
+        AtomicReference<CountDownLatch> received = new AtomicReference<>(new CountDownLatch(numberOfSubscriptions));
+        HttpRequest subscribeRequest = HttpRequest.newBuilder(baseUri.resolve("shopping-list/subscribe/" + shoppingList.getId()))
+                .header("Authorization", auth)
+                .header("Accept", "text/event-stream")
+                .build();
+        long subscribeStart = System.nanoTime();
+        for (int i = 0; i < numberOfSubscriptions; i++) {
+            httpClient.sendAsync(subscribeRequest, HttpResponse.BodyHandlers.fromLineSubscriber(new DataLineCounter(received)));
+        }
+        while (shoppingListEvents.getSubscriptionCount() < numberOfSubscriptions) {
+            Thread.sleep(10);
+        }
+        long subscribeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - subscribeStart);
+        // Gives the threads that handled the subscribe requests time to return to the pool.
+        Thread.sleep(1000);
+        int busyServerThreads = serverThreadPool.getBusyThreads();
+
+        List<Long> deliveryMillis = new ArrayList<>();
+        for (int i = 0; i < numberOfChanges; i++) {
+            CountDownLatch latch = new CountDownLatch(numberOfSubscriptions);
+            received.set(latch);
+            long start = System.nanoTime();
+            HttpRequest addItemRequest = HttpRequest.newBuilder(baseUri.resolve("shopping-list/add-item/" + shoppingList.getId()))
+                    .header("Authorization", auth)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"name\": \"Item " + i + "\"}"))
+                    .build();
+            HttpResponse<String> response = httpClient.send(addItemRequest, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("add-item failed: " + response.statusCode() + " " + response.body());
+            }
+            if (!latch.await(30, TimeUnit.SECONDS)) {
+                throw new IllegalStateException(latch.getCount() + " subscribers did not receive change " + i + ".");
+            }
+            deliveryMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        clientExecutor.shutdownNow();
+
+        deliveryMillis.sort(Long::compare);
+        System.out.printf("subscriptions=%d opened in %d ms%n", numberOfSubscriptions, subscribeMillis);
+        System.out.printf("server threads: %d busy with all subscriptions open, %d in the pool%n",
+                busyServerThreads, serverThreadPool.getThreads());
+        System.out.printf("JVM threads: %d, heap used: %d MB%n",
+                ManagementFactory.getThreadMXBean().getThreadCount(),
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024));
+        System.out.printf("change delivered to all subscribers: min=%d ms median=%d ms max=%d ms%n",
+                deliveryMillis.get(0), deliveryMillis.get(deliveryMillis.size() / 2), deliveryMillis.get(deliveryMillis.size() - 1));
+        if (busyServerThreads >= numberOfSubscriptions) {
+            throw new IllegalStateException("Every subscription needs a server thread.");
+        }
+    }
+
+    private static class DataLineCounter implements Flow.Subscriber<String> {
+        private final AtomicReference<CountDownLatch> received;
+
+        private DataLineCounter(AtomicReference<CountDownLatch> received) {
+            this.received = received;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("data:")) {
+                received.get().countDown();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            System.err.println("Subscription failed: " + throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -16,13 +16,15 @@ import static org.jooq.impl.DSL.table;
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class TestWithDB {
 
+    private static final String DB_URL = "jdbc:h2:memFS:test;DATABASE_TO_LOWER=TRUE;";
+
     protected DSLContext dslContext;
 
     @BeforeAll
     public void beforeAll() {
         Connection connection = null;
         try {
-            connection = DriverManager.getConnection("jdbc:h2:memFS:test;DATABASE_TO_LOWER=TRUE;", "sa", "");
+            connection = DriverManager.getConnection(DB_URL, "sa", "");
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -31,9 +33,14 @@ public class TestWithDB {
         migrator.migrate();
     }
 
+    protected ConnectionPool createConnectionPool(int poolSize) {
+        return new ConnectionPool(DB_URL, "sa", "", poolSize, 5000, 1800000);
+    }
+
     @BeforeEach
     public void beforeEach() {
         //dslContext.deleteFrom(table("shopping_list_shopping_list_item")).execute();
+        dslContext.deleteFrom(table("shopping_list_tombstone")).execute();
         dslContext.deleteFrom(table("shopping_list_item")).execute();
         dslContext.deleteFrom(table("shopping_list_authorization")).execute();
         dslContext.deleteFrom(table("shopping_list")).execute();
@@ -0,0 +1,73 @@
+package org.example;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+// Runs the application as Main wires it on a free port, backed by the test database.
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TestWithServer extends TestWithDB {
+
+    private ConnectionPool connectionPool;
+    private ShoppingListEvents shoppingListEvents;
+    private Server server;
+    private URI baseUri;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @BeforeAll
+    @Override
+    public void beforeAll() {
+        super.beforeAll();
+        connectionPool = createConnectionPool(4);
+        shoppingListEvents = createShoppingListEvents();
+        server = Main.createServer(0, DSL.using(connectionPool.getDataSource(), SQLDialect.POSTGRES), shoppingListEvents, false);
+        try {
+            server.start();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        baseUri = URI.create("http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/");
+    }
+
+    @AfterAll
+    public void afterAll() throws Exception {
+        server.stop();
+        shoppingListEvents.close();
+        connectionPool.close();
+    }
+
+    // Subclasses can pass their own events to observe or delay what happens after a mutation has committed.
+    protected ShoppingListEvents createShoppingListEvents() {
+        return new ShoppingListEvents();
+    }
+
+    protected HttpRequest.Builder request(String path, String auth) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(path)).timeout(Duration.ofSeconds(30));
+        return auth == null ? request : request.header("Authorization", auth);
+    }
+
+    protected static HttpRequest.BodyPublisher json(String body) {
+        return HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8);
+    }
+
+    protected HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    protected CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest.Builder request) {
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
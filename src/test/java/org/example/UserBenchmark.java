@@ -0,0 +1,56 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Name validation and normalization, which run for every sign-up, rename and user search.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserBenchmark {
+
+    // The names are chosen in setUp, because parameter values with umlauts or Greek letters do not survive the
+    // command line of the forked JVM on every platform.
+    @Param({"short", "long", "greek"})
+    public String kind;
+
+    private String name;
+
+    @Setup
+    public void setUp() {
+        switch (kind) {
+            case "short":
+                name = "Joe";
+                break;
+            case "long":
+                name = "MaximilianMeier";
+                break;
+            default:
+                name = "Σωκράτης";
+        }
+    }
+
+    @Benchmark
+    public boolean isNameValid() {
+        return User.isNameValid(name);
+    }
+
+    @Benchmark
+    public String getNormalizedName() {
+        return User.getNormalizedName(name);
+    }
+}
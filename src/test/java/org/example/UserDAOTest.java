@@ -1,5 +1,7 @@
 package org.example;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.checkerframework.checker.signature.qual.DotSeparatedIdentifiersOrPrimitiveType;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,6 +13,8 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
@@ -68,6 +72,147 @@ public class UserDAOTest extends TestWithDB {
 
     }
 
+    @Test
+    public void testGetAppUsersPage() {
+        for (String name : List.of("John", "Joe", "Jack", "Jim", "Jane")) {
+            dslContext.insertInto(table("user_account"))
+                    .set(field("id"), "test-id-" + name.toLowerCase())
+                    .set(field("version"), "test-version-" + name.toLowerCase())
+                    .set(field("name"), name)
+                    .set(field("normalized_name"), name.toLowerCase())
+                    .set(field("hashed_password"), "hashed-password")
+                    .set(field("salt"), "salt")
+                    .execute();
+        }
+        UserPage firstPage = userDAO.getAppUsersPage(null, 2);
+        assertThat(firstPage.getUsers()).containsExactly(
+                new User("test-id-jack", "test-version-jack", "Jack", null),
+                new User("test-id-jane", "test-version-jane", "Jane", null));
+        assertThat(firstPage.getNextCursor()).isEqualTo("test-id-jane");
+        UserPage secondPage = userDAO.getAppUsersPage(firstPage.getNextCursor(), 2);
+        assertThat(secondPage.getUsers()).containsExactly(
+                new User("test-id-jim", "test-version-jim", "Jim", null),
+                new User("test-id-joe", "test-version-joe", "Joe", null));
+        UserPage lastPage = userDAO.getAppUsersPage(secondPage.getNextCursor(), 2);
+        assertThat(lastPage.getUsers()).containsExactly(
+                new User("test-id-john", "test-version-john", "John", null));
+        assertThat(lastPage.getNextCursor()).isNull();
+        assertThat(lastPage.getUsers().get(0).getPassword()).isNull();
+    }
+
+    @Test
+    public void testGetAppUsersPageWithExactlyOnePage() {
+        userDAO.addUser(new User(null, null, "John", "johns-password"));
+        userDAO.addUser(new User(null, null, "Joe", "joes-password"));
+        UserPage page = userDAO.getAppUsersPage(null, 2);
+        assertThat(page.getUsers()).hasSize(2);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void testTryToGetAppUsersPageWithInvalidPageSize() {
+        assertThatThrownBy(() -> {
+            userDAO.getAppUsersPage(null, 0);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Invalid page size.");
+        assertThatThrownBy(() -> {
+            userDAO.getAppUsersPage(null, 1001);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Invalid page size.");
+    }
+
+    @Test
+    public void testWriteAllAppUsers() throws IOException {
+        User john = userDAO.addUser(new User(null, null, "John", "johns-password"));
+        User joe = userDAO.addUser(new User(null, null, "Joe", "joes-password"));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        userDAO.writeAllAppUsers(outputStream);
+        List<User> users = new ObjectMapper().readValue(outputStream.toByteArray(), new TypeReference<List<User>>() {});
+        assertThat(users).containsExactlyInAnyOrder(john, joe);
+        assertThat(users).extracting(User::getPassword).containsOnlyNulls();
+    }
+
+    @Test
+    public void testWriteAllAppUsersWithoutUsers() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        userDAO.writeAllAppUsers(outputStream);
+        assertThat(outputStream.toString(StandardCharsets.UTF_8)).isEqualTo("[]");
+    }
+
+    @Test
+    public void testSearchUsersByName() {
+        UserDAO searchingUserDAO = new UserDAO(dslContext);
+        User anna = searchingUserDAO.addUser(new User(null, null, "Anna", "annas-password"));
+        User annika = searchingUserDAO.addUser(new User(null, null, "Änni", "aennis-password"));
+        searchingUserDAO.addUser(new User(null, null, "Bert", "berts-password"));
+        assertThat(searchingUserDAO.searchUsersByName("an", 10)).containsExactly(
+                new User(anna.getId(), null, "Anna", null),
+                new User(annika.getId(), null, "Änni", null));
+        assertThat(searchingUserDAO.searchUsersByName("Än", 10)).extracting(User::getName).containsExactly("Anna", "Änni");
+        assertThat(searchingUserDAO.searchUsersByName("ANN", 1)).extracting(User::getName).containsExactly("Anna");
+        assertThat(searchingUserDAO.searchUsersByName("anni", 10)).extracting(User::getName).containsExactly("Änni");
+        assertThat(searchingUserDAO.searchUsersByName("c", 10)).isEmpty();
+    }
+
+    @Test
+    public void testSearchUsersByNameAfterAReset() {
+        UserDAO searchingUserDAO = new UserDAO(dslContext);
+        searchingUserDAO.addUser(new User(null, null, "Anna", "annas-password"));
+        assertThat(searchingUserDAO.searchUsersByName("an", 10)).extracting(User::getName).containsExactly("Anna");
+
+        Migrator migrator = new Migrator(dslContext);
+        migrator.reset();
+        migrator.migrate();
+        searchingUserDAO.clearCaches();
+        new UserDAO(dslContext).addUser(new User(null, null, "Annika", "annikas-password"));
+
+        assertThat(searchingUserDAO.searchUsersByName("an", 10)).extracting(User::getName).containsExactly("Annika");
+    }
+
+    @Test
+    public void testSearchUsersByNameFindsUsersAddedBeforeTheFirstSearch() {
+        dslContext.insertInto(table("user_account"))
+                .set(field("id"), "test-id")
+                .set(field("version"), "test-version")
+                .set(field("name"), "John")
+                .set(field("normalized_name"), "john")
+                .set(field("hashed_password"), "hashed-password")
+                .set(field("salt"), "salt")
+                .execute();
+        UserDAO searchingUserDAO = new UserDAO(dslContext);
+        assertThat(searchingUserDAO.searchUsersByName("jo", 10)).containsExactly(new User("test-id", null, "John", null));
+    }
+
+    @Test
+    public void testSearchUsersByNameAfterUpdateAndDelete() {
+        UserDAO searchingUserDAO = new UserDAO(dslContext);
+        User john = searchingUserDAO.addUser(new User(null, null, "John", "johns-password"));
+        User joe = searchingUserDAO.addUser(new User(null, null, "Joe", "joes-password"));
+        assertThat(searchingUserDAO.searchUsersByName("jo", 10)).extracting(User::getName).containsExactly("Joe", "John");
+
+        searchingUserDAO.updateUser(new User(john.getId(), john.getVersion(), "Jack", "johns-password"),
+                makeAuth(john.getId(), "johns-password"));
+        assertThat(searchingUserDAO.searchUsersByName("jo", 10)).extracting(User::getName).containsExactly("Joe");
+        assertThat(searchingUserDAO.searchUsersByName("ja", 10)).containsExactly(new User(john.getId(), null, "Jack", null));
+
+        searchingUserDAO.deleteUser(joe.getId(), makeAuth(joe.getId(), "joes-password"));
+        assertThat(searchingUserDAO.searchUsersByName("j", 10)).extracting(User::getName).containsExactly("Jack");
+    }
+
+    @Test
+    public void testTryToSearchUsersByNameWithInvalidPrefix() {
+        assertThatThrownBy(() -> {
+            userDAO.searchUsersByName("", 10);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Invalid search prefix.");
+        assertThatThrownBy(() -> {
+            userDAO.searchUsersByName("jo%", 10);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Invalid search prefix.");
+        assertThatThrownBy(() -> {
+            userDAO.searchUsersByName("jo", 0);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Invalid number of search results.");
+        assertThatThrownBy(() -> {
+            userDAO.searchUsersByName("jo", 51);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Invalid number of search results.");
+    }
+
     @Test
     public void testGetUser() {
         String hashedPassword = hashPasswordWithSalt("johns-password", "abcd");
@@ -647,6 +792,131 @@ public class UserDAOTest extends TestWithDB {
         }).isInstanceOf(ApplicationException.class).hasMessage("Wrong credentials.");
     }
 
+    @Test
+    public void testAuthenticateByAuthIsCached() {
+        User addedUser = userDAO.addUser(new User(null, null, "John", "johns-password"));
+        String auth = makeAuth(addedUser.getId(), "johns-password");
+        long hitsBefore = userDAO.getAuthenticationCacheStats().hitCount();
+        User first = userDAO.authenticate(auth);
+        User second = userDAO.authenticate(auth);
+        assertThat(second).isEqualTo(first);
+        assertThat(userDAO.getAuthenticationCacheStats().hitCount()).isEqualTo(hitsBefore + 1);
+    }
+
+    @Test
+    public void testTryAuthenticateWithOldPasswordAfterUpdate() {
+        User addedUser = userDAO.addUser(new User(null, null, "John", "johns-password"));
+        String oldAuth = makeAuth(addedUser.getId(), "johns-password");
+        userDAO.authenticate(oldAuth);
+        userDAO.updateUser(new User(
+                addedUser.getId(),
+                addedUser.getVersion(),
+                "John",
+                "johns-new-password"
+        ), oldAuth);
+        assertThatThrownBy(() -> {
+            userDAO.authenticate(oldAuth);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Wrong credentials.");
+        User actual = userDAO.authenticate(makeAuth(addedUser.getId(), "johns-new-password"));
+        assertThat(actual.getVersion()).isNotEqualTo(addedUser.getVersion());
+    }
+
+    @Test
+    public void testTryAuthenticateAfterDelete() {
+        User addedUser = userDAO.addUser(new User(null, null, "John", "johns-password"));
+        String auth = makeAuth(addedUser.getId(), "johns-password");
+        userDAO.authenticate(auth);
+        userDAO.deleteUser(addedUser.getId(), auth);
+        assertThatThrownBy(() -> {
+            userDAO.authenticate(auth);
+        }).isInstanceOf(ApplicationException.class).hasMessage("User not found.");
+    }
+
+    @Test
+    public void testAuthenticateWithSessionToken() {
+        User addedUser = userDAO.addUser(new User(null, null, "John", "johns-password"));
+        String token = userDAO.login(makeAuth(addedUser.getId(), "johns-password"));
+        assertThat(token).startsWith("Bearer ");
+        User expected = new User(addedUser.getId(), addedUser.getVersion(), "John", null);
+        assertThat(userDAO.authenticate(token)).isEqualTo(expected);
+        assertThat(userDAO.authenticate(addedUser.getId(), token)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testAuthenticateWithSessionTokenDoesNotAccessDatabase() {
+        User addedUser = userDAO.addUser(new User(null, null, "John", "johns-password"));
+        String token = userDAO.login(makeAuth(addedUser.getId(), "johns-password"));
+        dslContext.deleteFrom(table("user_account")).execute();
+        User expected = new User(addedUser.getId(), addedUser.getVersion(), "John", null);
+        assertThat(userDAO.authenticate(token)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testTryAuthenticateWithSessionTokenOfOtherUser() {
+        User addedUser = userDAO.addUser(new User(null, null, "John", "johns-password"));
+        User otherUser = userDAO.addUser(new User(null, null, "Joe", "joes-password"));
+        String token = userDAO.login(makeAuth(otherUser.getId(), "joes-password"));
+        assertThatThrownBy(() -> {
+            userDAO.authenticate(addedUser.getId(), token);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Wrong credentials.");
+    }
+
+    @Test
+    public void testTryAuthenticateWithTamperedSessionToken() {
+        User addedUser = userDAO.addUser(new User(null, null, "John", "johns-password"));
+        String token = userDAO.login(makeAuth(addedUser.getId(), "johns-password"));
+        String tamperedToken = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+        assertThatThrownBy(() -> {
+            userDAO.authenticate(tamperedToken);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Invalid session token.");
+    }
+
+    @Test
+    public void testTryAuthenticateWithExpiredSessionToken() {
+        SessionTokens expiredSessionTokens = new SessionTokens(new byte[32], Duration.ofMinutes(-1), Clock.systemUTC());
+        UserDAO userDAOWithExpiredTokens = new UserDAO(dslContext, expiredSessionTokens);
+        User addedUser = userDAOWithExpiredTokens.addUser(new User(null, null, "John", "johns-password"));
+        String token = userDAOWithExpiredTokens.login(makeAuth(addedUser.getId(), "johns-password"));
+        assertThatThrownBy(() -> {
+            userDAOWithExpiredTokens.authenticate(token);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Session token expired.");
+    }
+
+    @Test
+    public void testTryAuthenticateWithSessionTokenAfterUpdate() {
+        User addedUser = userDAO.addUser(new User(null, null, "John", "johns-password"));
+        String token = userDAO.login(makeAuth(addedUser.getId(), "johns-password"));
+        userDAO.updateUser(new User(
+                addedUser.getId(),
+                addedUser.getVersion(),
+                "JohnsNewName",
+                "johns-password"
+        ), token);
+        assertThatThrownBy(() -> {
+            userDAO.authenticate(token);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Session token was revoked.");
+        String newToken = userDAO.login(makeAuth(addedUser.getId(), "johns-password"));
+        assertThat(userDAO.authenticate(newToken).getName()).isEqualTo("JohnsNewName");
+    }
+
+    @Test
+    public void testSessionTokenIsRevokedAfterAnUpdateOnAnotherNode() throws InterruptedException {
+        UserDAO shortCachingUserDAO = new UserDAO(dslContext, new SessionTokens(), new ShoppingListDAO(dslContext),
+                100, Duration.ofMinutes(5), Duration.ofMillis(200));
+        User addedUser = shortCachingUserDAO.addUser(new User(null, null, "John", "johns-password"));
+        String token = shortCachingUserDAO.login(makeAuth(addedUser.getId(), "johns-password"));
+        assertThat(shortCachingUserDAO.authenticate(token).getId()).isEqualTo(addedUser.getId());
+
+        // Another node changes the user, so this DAO only sees it once its cached version expires.
+        userDAO.updateUser(new User(addedUser.getId(), addedUser.getVersion(), "John", "johns-new-password"),
+                makeAuth(addedUser.getId(), "johns-password"));
+        Thread.sleep(300);
+
+        assertThatThrownBy(() -> {
+            shortCachingUserDAO.authenticate(token);
+        }).isInstanceOf(ApplicationException.class).hasMessage("Session token was revoked.");
+    }
+
     public static String makeAuth(String id, String password) {
         return "Basic " + new String(Base64.getEncoder().encode((id + ":" + password).getBytes(StandardCharsets.UTF_8)));
     }
@@ -0,0 +1,65 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Prefix searches in an index of random user names, as typed into the invitation dialog.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class UserNameIndexBenchmark {
+
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzäöß";
+
+    @Param({"1000000"})
+    public int numberOfUsers;
+
+    private UserNameIndex userNameIndex;
+    private String[] prefixes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        userNameIndex = new UserNameIndex();
+        while (userNameIndex.size() < numberOfUsers) {
+            userNameIndex.put(UUID.randomUUID().toString(), randomName(random, 3 + random.nextInt(14)));
+        }
+        prefixes = new String[1024];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = User.getNormalizedName(randomName(random, 1 + i % 4));
+        }
+    }
+
+    @Benchmark
+    public List<User> search() {
+        next = (next + 1) % prefixes.length;
+        return userNameIndex.search(prefixes[next], 10);
+    }
+
+    private static String randomName(Random random, int length) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            name.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        return name.toString();
+    }
+}